@@ -0,0 +1,544 @@
+/**
+ *
+ */
+package org.theseed.meta.controllers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This object is a search index for compounds.  It finds the same matches as filtering the
+ * compounds with MetaCompound#matches, without scanning the whole compound list.  Compound names
+ * are indexed by trigram, and the lower-case IDs are kept in a sorted array so that prefix matches
+ * can be found with a binary search.
+ *
+ * The matches are ranked.  An exact ID match comes first, followed by ID prefixes, exact names,
+ * name prefixes, word prefixes in the name, and finally other name substrings.  Within a tier,
+ * shorter names come first.  If there are fewer matches than the result limit, names and IDs that
+ * are within a small edit distance of the search string are added at the end, so that typing
+ * errors still find something.  Only the best matches are sorted, so the cost of ranking does not
+ * depend on how many compounds match.
+ *
+ * The index remembers the results of the previous search.  If the new search string extends the
+ * old one, every match for the new string is also a match for the old one, so the old results
+ * are simply narrowed.  This is the common case when the user is typing into a search box.
+ * Searches are synchronized, since they may be run by a background thread.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class CompoundIndex {
+
+    // FIELDS
+    /** compounds in the index, sorted by ID */
+    private MetaCompound[] compounds;
+    /** lower-case compound names, parallel to the compound array */
+    private String[] lcNames;
+    /** lower-case compound IDs, parallel to the compound array */
+    private String[] lcIds;
+    /** lower-case compound IDs, sorted */
+    private String[] idKeys;
+    /** compound array index for each lower-case ID */
+    private int[] idOrder;
+    /** map of name trigrams to sorted lists of compound array indices */
+    private Map<String, int[]> trigrams;
+    /** lower-case search string for the previous search (or NULL if there was none) */
+    private String lastQuery;
+    /** sorted compound array indices found by the previous search */
+    private int[] lastResult;
+    /** map of name words and IDs to sorted lists of compound array indices */
+    private Map<String, int[]> tokens;
+    /** name words and IDs, organized by length */
+    private List<List<String>> tokensByLength;
+    /** length of an n-gram in the name index */
+    private static final int GRAM_LEN = 3;
+    /** maximum number of ranked results to return */
+    public static final int MAX_RESULTS = 500;
+    /** minimum search string length for an edit-distance search */
+    private static final int MIN_FUZZY_LEN = 4;
+    /** search string length at which two edits are allowed */
+    private static final int TWO_EDIT_LEN = 8;
+    /** rank tier for an exact ID match */
+    private static final int TIER_EXACT_ID = 0;
+    /** rank tier for an ID prefix */
+    private static final int TIER_ID_PREFIX = 1;
+    /** rank tier for an exact name match */
+    private static final int TIER_EXACT_NAME = 2;
+    /** rank tier for a name prefix */
+    private static final int TIER_NAME_PREFIX = 3;
+    /** rank tier for a word prefix within the name */
+    private static final int TIER_WORD_PREFIX = 4;
+    /** rank tier for a name substring */
+    private static final int TIER_SUBSTRING = 5;
+    /** rank tier for an edit-distance match (plus the distance) */
+    private static final int TIER_FUZZY = 5;
+    /** number of bits in a rank score for the compound index */
+    private static final int INDEX_BITS = 20;
+    /** number of bits in a rank score for the name length */
+    private static final int LENGTH_BITS = 20;
+
+    /**
+     * Construct an index for a collection of compounds.
+     *
+     * @param compoundList	compounds to index
+     */
+    public CompoundIndex(Collection<MetaCompound> compoundList) {
+        final int n = compoundList.size();
+        this.compounds = compoundList.toArray(new MetaCompound[n]);
+        Arrays.sort(this.compounds);
+        // Build the lower-case name array and the trigram postings.
+        this.lcNames = new String[n];
+        Map<String, IntList> postings = new HashMap<String, IntList>(n * 4);
+        Map<String, IntList> tokenPostings = new HashMap<String, IntList>(n * 2);
+        Set<String> grams = new HashSet<String>(50);
+        Set<String> words = new HashSet<String>(10);
+        for (int i = 0; i < n; i++) {
+            String name = this.compounds[i].getName().toLowerCase();
+            this.lcNames[i] = name;
+            grams.clear();
+            for (int j = GRAM_LEN; j <= name.length(); j++)
+                grams.add(name.substring(j - GRAM_LEN, j));
+            // Because we process the compounds in order, each posting list is sorted.
+            for (String gram : grams)
+                postings.computeIfAbsent(gram, x -> new IntList()).add(i);
+            // Now the words for the edit-distance search.  The ID counts as a word.
+            words.clear();
+            for (String word : name.split("[^a-z0-9]+")) {
+                if (word.length() >= MIN_FUZZY_LEN - 1)
+                    words.add(word);
+            }
+            words.add(this.compounds[i].getId().toLowerCase());
+            for (String word : words)
+                tokenPostings.computeIfAbsent(word, x -> new IntList()).add(i);
+        }
+        this.trigrams = new HashMap<String, int[]>(postings.size() * 4 / 3 + 1);
+        for (Map.Entry<String, IntList> posting : postings.entrySet())
+            this.trigrams.put(posting.getKey(), posting.getValue().toArray());
+        this.tokens = new HashMap<String, int[]>(tokenPostings.size() * 4 / 3 + 1);
+        this.tokensByLength = new ArrayList<List<String>>();
+        for (Map.Entry<String, IntList> posting : tokenPostings.entrySet()) {
+            String word = posting.getKey();
+            this.tokens.put(word, posting.getValue().toArray());
+            while (this.tokensByLength.size() <= word.length())
+                this.tokensByLength.add(new ArrayList<String>());
+            this.tokensByLength.get(word.length()).add(word);
+        }
+        // Build the sorted ID key array.
+        Integer[] order = new Integer[n];
+        String[] lcIds = new String[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            lcIds[i] = this.compounds[i].getId().toLowerCase();
+        }
+        this.lcIds = lcIds;
+        Arrays.sort(order, (a, b) -> lcIds[a].compareTo(lcIds[b]));
+        this.idKeys = new String[n];
+        this.idOrder = new int[n];
+        for (int i = 0; i < n; i++) {
+            this.idOrder[i] = order[i];
+            this.idKeys[i] = lcIds[order[i]];
+        }
+        this.lastQuery = null;
+        this.lastResult = null;
+    }
+
+    /**
+     * This is a simple growable array of integers, used to build posting lists.
+     */
+    private static class IntList {
+
+        /** array of values */
+        private int[] values;
+        /** number of values in use */
+        private int size;
+
+        protected IntList() {
+            this.values = new int[4];
+            this.size = 0;
+        }
+
+        /**
+         * Add a value to the end of the list.
+         *
+         * @param value		value to add
+         */
+        protected void add(int value) {
+            if (this.size >= this.values.length)
+                this.values = Arrays.copyOf(this.values, this.values.length * 2);
+            this.values[this.size++] = value;
+        }
+
+        /**
+         * @return an array containing the values in the list
+         */
+        protected int[] toArray() {
+            return Arrays.copyOf(this.values, this.size);
+        }
+
+    }
+
+    /**
+     * Find the compounds matching a search string.  A compound matches if its name contains the
+     * string or its ID begins with it.  The comparison is case-insensitive.  If there are too few
+     * matches, near misses are included as well.
+     *
+     * @param string	search string
+     *
+     * @return the best matching compounds in rank order, or all the compounds in ID order if the
+     * 			search string is empty
+     */
+    public synchronized List<MetaCompound> search(String string) {
+        String lc = string.toLowerCase();
+        int[] found;
+        if (lc.isEmpty()) {
+            // Everything matches an empty string.
+            found = new int[this.compounds.length];
+            for (int i = 0; i < found.length; i++)
+                found[i] = i;
+        } else if (this.lastQuery != null && ! this.lastQuery.isEmpty() && lc.startsWith(this.lastQuery)) {
+            // Here we can narrow the previous results.
+            found = this.narrow(this.lastResult, lc);
+        } else {
+            int[] nameHits = this.searchNames(lc);
+            int[] idHits = this.searchIds(lc);
+            found = merge(nameHits, idHits);
+        }
+        this.lastQuery = lc;
+        this.lastResult = found;
+        List<MetaCompound> retVal;
+        if (lc.isEmpty()) {
+            retVal = new ArrayList<MetaCompound>(found.length);
+            for (int i : found)
+                retVal.add(this.compounds[i]);
+        } else
+            retVal = this.rank(lc, found);
+        return retVal;
+    }
+
+    /**
+     * Rank the matches for a search string and return the best ones.
+     *
+     * @param lc		lower-case search string
+     * @param found		sorted array of compound array indices for the matching compounds
+     *
+     * @return the best compounds, in rank order
+     */
+    private List<MetaCompound> rank(String lc, int[] found) {
+        TopScores best = new TopScores(MAX_RESULTS);
+        for (int i : found)
+            best.offer(this.score(this.tier(i, lc), i));
+        // If we have room, look for near misses.
+        if (found.length < MAX_RESULTS && lc.length() >= MIN_FUZZY_LEN) {
+            final int maxDist = (lc.length() >= TWO_EDIT_LEN ? 2 : 1);
+            Set<Integer> fuzzy = new HashSet<Integer>();
+            final int maxLen = Math.min(lc.length() + maxDist, this.tokensByLength.size() - 1);
+            for (int len = lc.length() - maxDist; len <= maxLen; len++) {
+                for (String word : this.tokensByLength.get(len)) {
+                    int dist = editDistance(lc, word, maxDist);
+                    if (dist <= maxDist) {
+                        for (int i : this.tokens.get(word)) {
+                            if (Arrays.binarySearch(found, i) < 0 && fuzzy.add(i))
+                                best.offer(this.score(TIER_FUZZY + dist, i));
+                        }
+                    }
+                }
+            }
+        }
+        // Convert the scores back to compounds.
+        long[] scores = best.sorted();
+        List<MetaCompound> retVal = new ArrayList<MetaCompound>(scores.length);
+        final long indexMask = (1L << INDEX_BITS) - 1;
+        for (long score : scores)
+            retVal.add(this.compounds[(int) (score & indexMask)]);
+        return retVal;
+    }
+
+    /**
+     * @return the rank tier of a matching compound
+     *
+     * @param i			compound array index of the compound
+     * @param lc		lower-case search string
+     */
+    private int tier(int i, String lc) {
+        final String id = this.lcIds[i];
+        final String name = this.lcNames[i];
+        int retVal;
+        if (id.equals(lc))
+            retVal = TIER_EXACT_ID;
+        else if (id.startsWith(lc))
+            retVal = TIER_ID_PREFIX;
+        else if (name.equals(lc))
+            retVal = TIER_EXACT_NAME;
+        else if (name.startsWith(lc))
+            retVal = TIER_NAME_PREFIX;
+        else {
+            // Look for an occurrence at the start of a word.
+            retVal = TIER_SUBSTRING;
+            int pos = name.indexOf(lc);
+            while (pos >= 0 && retVal == TIER_SUBSTRING) {
+                if (! Character.isLetterOrDigit(name.charAt(pos - 1)))
+                    retVal = TIER_WORD_PREFIX;
+                else
+                    pos = name.indexOf(lc, pos + 1);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Compute the rank score for a compound.  Lower scores are better.  The score contains the tier,
+     * the name length, and the compound array index, so scores are unique and ties are broken by ID.
+     *
+     * @param tier		rank tier of the compound
+     * @param i			compound array index of the compound
+     *
+     * @return the rank score
+     */
+    private long score(int tier, int i) {
+        long len = Math.min(this.lcNames[i].length(), (1 << LENGTH_BITS) - 1);
+        return ((long) tier << (LENGTH_BITS + INDEX_BITS)) | (len << INDEX_BITS) | i;
+    }
+
+    /**
+     * Compute the edit distance between two strings, giving up when it exceeds a limit.
+     *
+     * @param a			first string
+     * @param b			second string
+     * @param limit		maximum distance of interest
+     *
+     * @return the edit distance, or a value greater than the limit if the distance is too great
+     */
+    private static int editDistance(String a, String b, int limit) {
+        final int m = b.length();
+        int[] prev = new int[m + 1];
+        int[] curr = new int[m + 1];
+        for (int j = 0; j <= m; j++)
+            prev[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            curr[0] = i;
+            int rowMin = curr[0];
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cost = (ca == b.charAt(j - 1) ? 0 : 1);
+                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                if (curr[j] < rowMin) rowMin = curr[j];
+            }
+            // If the whole row is over the limit, the distance can only grow.
+            if (rowMin > limit)
+                return limit + 1;
+            int[] temp = prev;
+            prev = curr;
+            curr = temp;
+        }
+        return prev[m];
+    }
+
+    /**
+     * This object keeps the lowest scores offered to it, up to a fixed limit.  It is a max-heap, so
+     * the worst score being kept is always at the top, ready to be displaced.
+     */
+    private static class TopScores {
+
+        /** heap of scores */
+        private long[] heap;
+        /** number of scores in the heap */
+        private int size;
+
+        protected TopScores(int limit) {
+            this.heap = new long[limit];
+            this.size = 0;
+        }
+
+        /**
+         * Offer a score to the heap.  It is kept if there is room or it is better than the worst
+         * score currently kept.
+         *
+         * @param score		score to offer
+         */
+        protected void offer(long score) {
+            if (this.size < this.heap.length) {
+                // Add at the bottom and sift up.
+                int pos = this.size++;
+                while (pos > 0 && this.heap[(pos - 1) / 2] < score) {
+                    this.heap[pos] = this.heap[(pos - 1) / 2];
+                    pos = (pos - 1) / 2;
+                }
+                this.heap[pos] = score;
+            } else if (score < this.heap[0]) {
+                // Replace the top and sift down.
+                int pos = 0;
+                boolean done = false;
+                while (! done) {
+                    int child = pos * 2 + 1;
+                    if (child >= this.size)
+                        done = true;
+                    else {
+                        if (child + 1 < this.size && this.heap[child + 1] > this.heap[child])
+                            child++;
+                        if (this.heap[child] <= score)
+                            done = true;
+                        else {
+                            this.heap[pos] = this.heap[child];
+                            pos = child;
+                        }
+                    }
+                }
+                this.heap[pos] = score;
+            }
+        }
+
+        /**
+         * @return the scores kept, in ascending order
+         */
+        protected long[] sorted() {
+            long[] retVal = Arrays.copyOf(this.heap, this.size);
+            Arrays.sort(retVal);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * @return the subset of a list of compound array indices that match a search string
+     *
+     * @param previous	sorted array of compound array indices to check
+     * @param lc		lower-case search string
+     */
+    private int[] narrow(int[] previous, String lc) {
+        IntList retVal = new IntList();
+        for (int i : previous) {
+            if (this.lcNames[i].contains(lc) || this.lcIds[i].startsWith(lc))
+                retVal.add(i);
+        }
+        return retVal.toArray();
+    }
+
+    /**
+     * @return the sorted indices of the compounds whose names contain a search string
+     *
+     * @param lc		lower-case search string
+     */
+    private int[] searchNames(String lc) {
+        IntList retVal = new IntList();
+        if (lc.length() < GRAM_LEN) {
+            // Short strings match so many names that a scan of the pre-folded names is best.
+            for (int i = 0; i < this.lcNames.length; i++) {
+                if (this.lcNames[i].contains(lc))
+                    retVal.add(i);
+            }
+        } else {
+            // Get the posting lists for the trigrams, shortest first.  If any trigram is missing,
+            // nothing can match.
+            List<int[]> lists = new ArrayList<int[]>(lc.length());
+            boolean possible = true;
+            for (int j = GRAM_LEN; possible && j <= lc.length(); j++) {
+                int[] posting = this.trigrams.get(lc.substring(j - GRAM_LEN, j));
+                if (posting == null)
+                    possible = false;
+                else
+                    lists.add(posting);
+            }
+            if (possible) {
+                lists.sort((a, b) -> a.length - b.length);
+                int[] candidates = lists.get(0);
+                for (int k = 1; k < lists.size() && candidates.length > 0; k++)
+                    candidates = intersect(candidates, lists.get(k));
+                // The trigrams can match out of order, so we verify each candidate.
+                for (int i : candidates) {
+                    if (this.lcNames[i].contains(lc))
+                        retVal.add(i);
+                }
+            }
+        }
+        return retVal.toArray();
+    }
+
+    /**
+     * @return the sorted indices of the compounds whose IDs begin with a search string
+     *
+     * @param lc		lower-case search string
+     */
+    private int[] searchIds(String lc) {
+        // Find the first key not less than the search string.
+        int low = 0;
+        int high = this.idKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.idKeys[mid].compareTo(lc) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        // Collect the keys with the prefix.
+        IntList hits = new IntList();
+        for (int i = low; i < this.idKeys.length && this.idKeys[i].startsWith(lc); i++)
+            hits.add(this.idOrder[i]);
+        int[] retVal = hits.toArray();
+        Arrays.sort(retVal);
+        return retVal;
+    }
+
+    /**
+     * @return the intersection of two sorted index arrays
+     *
+     * @param a		first array
+     * @param b		second array
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] retVal = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j])
+                i++;
+            else if (a[i] > b[j])
+                j++;
+            else {
+                retVal[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(retVal, n);
+    }
+
+    /**
+     * @return the union of two sorted index arrays, without duplicates
+     *
+     * @param a		first array
+     * @param b		second array
+     */
+    private static int[] merge(int[] a, int[] b) {
+        int[] retVal = new int[a.length + b.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j >= b.length || (i < a.length && a[i] < b[j]))
+                retVal[n++] = a[i++];
+            else if (i >= a.length || b[j] < a[i])
+                retVal[n++] = b[j++];
+            else {
+                retVal[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(retVal, n);
+    }
+
+    /**
+     * @return the number of compounds in the index
+     */
+    public int size() {
+        return this.compounds.length;
+    }
+
+}
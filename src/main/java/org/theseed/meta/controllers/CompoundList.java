@@ -3,6 +3,10 @@
  */
 package org.theseed.meta.controllers;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import javafx.collections.ObservableList;
 import javafx.event.EventHandler;
 import javafx.scene.control.ListCell;
@@ -158,6 +162,97 @@ public abstract class CompoundList {
         this.list.setOnKeyPressed(this.new KeyPressListener(myHandler));
     }
 
+    /**
+     * Replace the contents of the list control with a new list of compounds.  Rather than
+     * rebuilding the list, we remove the compounds that are no longer present and insert the
+     * new ones, a run at a time.  This keeps the list view from relaying out every cell when the
+     * changes are small, as they usually are when a search is narrowed.  The delta update requires
+     * the surviving compounds to be in the same relative order in both lists.  This is checked
+     * before anything is changed, and if the order is different, the list is simply replaced with a
+     * single change.
+     *
+     * @param newItems	new list of compounds to display
+     */
+    public void replaceAll(List<MetaCompound> newItems) {
+        replaceAll(this.list.getItems(), newItems);
+    }
+
+    /**
+     * Replace the contents of an observable compound list with a new list of compounds, changing
+     * only the runs of compounds that differ.
+     *
+     * @param items		observable list to update
+     * @param newItems	new list of compounds
+     */
+    protected static void replaceAll(ObservableList<MetaCompound> items, List<MetaCompound> newItems) {
+        Set<MetaCompound> keep = new HashSet<MetaCompound>(newItems);
+        if (! isOrderCompatible(items, newItems, keep))
+            items.setAll(newItems);
+        else {
+            // Remove the runs of compounds not in the new list.  We go backward so the indices
+            // stay valid.
+            int i = items.size();
+            while (i > 0) {
+                if (keep.contains(items.get(i - 1)))
+                    i--;
+                else {
+                    int end = i;
+                    i--;
+                    while (i > 0 && ! keep.contains(items.get(i - 1)))
+                        i--;
+                    items.remove(i, end);
+                }
+            }
+            // Now insert the runs of new compounds.
+            i = 0;
+            int j = 0;
+            final int n = newItems.size();
+            while (j < n) {
+                if (i < items.size() && items.get(i).equals(newItems.get(j))) {
+                    i++;
+                    j++;
+                } else {
+                    // Find the end of the run of compounds to insert.
+                    int start = j;
+                    j++;
+                    while (j < n && (i >= items.size() || ! items.get(i).equals(newItems.get(j))))
+                        j++;
+                    items.addAll(i, newItems.subList(start, j));
+                    i += j - start;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return TRUE if the compounds in both an old and a new list are in the same relative order in each
+     *
+     * @param items		old list of compounds
+     * @param newItems	new list of compounds
+     * @param keep		set of the compounds in the new list
+     */
+    private static boolean isOrderCompatible(List<MetaCompound> items, List<MetaCompound> newItems,
+            Set<MetaCompound> keep) {
+        Set<MetaCompound> old = new HashSet<MetaCompound>(items);
+        final int m = items.size();
+        final int n = newItems.size();
+        boolean retVal = true;
+        int i = 0;
+        int j = 0;
+        while (retVal && (i < m || j < n)) {
+            if (i < m && ! keep.contains(items.get(i)))
+                i++;
+            else if (j < n && ! old.contains(newItems.get(j)))
+                j++;
+            else if (i < m && j < n && items.get(i).equals(newItems.get(j))) {
+                i++;
+                j++;
+            } else
+                retVal = false;
+        }
+        return retVal;
+    }
+
     /**
      * @return the list control
      */
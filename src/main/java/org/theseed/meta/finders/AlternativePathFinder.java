@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package org.theseed.meta.finders;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.theseed.basic.ParseFailureException;
+import org.theseed.meta.network.IReactionNetwork;
+import org.theseed.meta.network.KShortestSearch;
+import org.theseed.metabolism.Pathway;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+
+/**
+ * This path finder finds the shortest distinct pathways through all the input metabolites in a single
+ * search of the current flow network.  Each pathway is passed to the client for display as soon as it
+ * is found, and the shortest one is returned as the result.  The search always runs on the flow network,
+ * regardless of the selected engine.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AlternativePathFinder extends PathFinder {
+
+    // FIELDS
+    /** controlling command processor */
+    private IParms processor;
+    /** flow network to search */
+    private IReactionNetwork network;
+    /** number of alternatives displayed so far */
+    private int found;
+    /** maximum number of alternative pathways to find */
+    public static final int MAX_ALTERNATIVES = 5;
+
+    public AlternativePathFinder(IParms processor) throws ParseFailureException, IOException, JsonException {
+        super(processor);
+        this.processor = processor;
+        if (this.getNumLeft() < 2)
+            throw new ParseFailureException("At least two compounds required to find a pathway.");
+        this.network = processor.getNetwork();
+        if (this.network == null)
+            throw new ParseFailureException("No flow network is available for an alternative-pathway search.");
+        this.found = 0;
+    }
+
+    @Override
+    public Pathway computePath() {
+        List<String> compounds = this.getCompoundIds();
+        this.showStatus("Computing up to " + MAX_ALTERNATIVES + " pathways from " + compounds.get(0) + " to "
+                + compounds.get(compounds.size() - 1) + ".");
+        List<Pathway> paths = new ArrayList<Pathway>(MAX_ALTERNATIVES);
+        KShortestSearch search = new KShortestSearch(this.network);
+        search.findPaths(compounds, MAX_ALTERNATIVES, x -> this.showAlternative(x, paths));
+        log.info("{} alternative pathways found with {} expansions.", paths.size(), search.getExpansions());
+        Pathway retVal = null;
+        if (! paths.isEmpty())
+            retVal = paths.get(0);
+        return retVal;
+    }
+
+    /**
+     * Pass an alternative pathway to the client for display.  If looping is requested and the
+     * pathway cannot be looped, it is skipped.
+     *
+     * @param path		pathway found by the search
+     * @param paths		list of pathways displayed so far
+     */
+    private void showAlternative(Pathway path, List<Pathway> paths) {
+        Pathway looped = this.loopPath(path);
+        if (looped != null) {
+            paths.add(looped);
+            this.found = paths.size();
+            this.processor.showAlternative(looped, this.found);
+            this.showStatus("Alternative " + this.found + " contains " + looped.size() + " reactions.");
+            this.showProgress((double) this.found / MAX_ALTERNATIVES);
+        }
+    }
+
+    @Override
+    protected boolean isNetworkSearch() {
+        return true;
+    }
+
+    @Override
+    protected boolean isStreamed() {
+        return true;
+    }
+
+    @Override
+    protected String describeResult(Pathway path) {
+        return Integer.toString(this.found) + " alternative pathways found.  The shortest contains "
+                + Integer.toString(path.size()) + " reactions.";
+    }
+
+}
@@ -32,19 +32,24 @@ public class BackfillPathFinder extends PathFinder {
             throw new ParseFailureException("At least one metabolite is required to backfill a path.");
     }
 
+    @Override
+    protected String getLegTarget() {
+        return this.path2.getInput();
+    }
+
     @Override
     public Pathway computePath() {
         // Get the first two compounds and build a pathway from them.
         String start = this.nextCompound();
         String end = this.nextCompound();
         this.showStatus("Computing pathway from " + start + " to " + end + ".");
-        Pathway retVal = this.getModel().getPathway(start, end);
+        Pathway retVal = this.getPathway(start, end);
         // Finish the path through the rest of the compounds.
         retVal = this.finishPath(retVal);
         if (retVal != null) {
             // Extend the pathway to the input compound of the starting path.
             this.showStatus("Extending computed pathway to " + path2.toString() + ".");
-            retVal = this.getModel().extendPathway(retVal, path2.getInput());
+            retVal = this.extendPathway(retVal, path2.getInput());
             // Now append the starting path to the path being constructed.
             retVal.append(path2);
         }
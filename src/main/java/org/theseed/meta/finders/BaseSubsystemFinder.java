@@ -4,30 +4,63 @@
 package org.theseed.meta.finders;
 
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.stream.Collectors;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.metabolism.MetaModel;
+import org.theseed.meta.jfx.InterruptException;
+import org.theseed.meta.network.IReactionNetwork;
+import org.theseed.meta.network.NetworkSearch;
+import org.theseed.meta.storage.SubsystemPath;
 import org.theseed.metabolism.Pathway;
 
 import com.github.cliftonlabs.json_simple.JsonException;
 
 /**
  * This is the base class for all subsystem-based finders.  The subsystem extension paths are all found
- * and then the best one is chosen by the subclass.
+ * and then the best one is chosen by the subclass.  The searches for the individual subsystem paths
+ * are independent, so they are run in parallel.  The subsystem paths are scored by their lengths alone,
+ * so only the winning subsystem path needs to be parsed.
+ *
+ * Each subclass scores a candidate by the lengths of its output path and its subsystem path.  The
+ * best score found so far is shared by all the searches, and since a path only gets longer as it is
+ * extended, a candidate whose partial score already exceeds the best is abandoned.  The candidates are
+ * started in order of subsystem path length, so that a good bound is found early.
+ *
+ * If the bidirectional engine is selected and there is only one goal compound, we first try a single
+ * multi-source search of the flow network that starts from all the subsystem outputs at once, each
+ * seeded with the score of its subsystem path.  The winner of this search is then the best candidate.
+ * With more than one goal, the best source for the first leg is not necessarily the best for the whole
+ * extension, so every candidate is scored in full.  The model engine never uses the multi-source
+ * search, since it does not search the flow network.
  *
  * @author Bruce Parrello
  *
  */
 public abstract class BaseSubsystemFinder extends PathFinder {
 
-    /** collection of subsystem paths */
-    private Collection<Pathway> subsysPaths;
+    /** collection of subsystem path descriptors */
+    private Collection<SubsystemPath> subsysPaths;
+    /** reaction network for the multi-source search, or NULL if the model is doing the searches */
+    private IReactionNetwork network;
+    /** best score found so far in the current search */
+    private AtomicLong bound;
+    /** number of milliseconds to wait between progress checks */
+    private static final long POLL_INTERVAL = 100;
 
     /**
      * Create this processor.  The main job here is to get the subsystem paths.
@@ -41,6 +74,7 @@ public abstract class BaseSubsystemFinder extends PathFinder {
     public BaseSubsystemFinder(IParms processor) throws ParseFailureException, IOException, JsonException {
         super(processor);
         this.subsysPaths = processor.getSubsysPathways();
+        this.network = (processor.getEngine() == Engine.BIDIRECTIONAL ? processor.getNetwork() : null);
         if (this.subsysPaths == null) {
             // Here the user cancelled out.
             throw new ParseFailureException("A subsystem is required to do a subsystem path search.");
@@ -56,52 +90,223 @@ public abstract class BaseSubsystemFinder extends PathFinder {
 
     @Override
     public Pathway computePath() {
-        // Put the pathways in a sorted map.  The shortest path found will be placed first, and mapped
-        // to the original path.
-        var outputs = new HashMap<Pathway, Pathway>(this.subsysPaths.size() * 3 / 2 + 1);
-        MetaModel model = this.getModel();
         // Get the first compound.  There is always at least one, because the constructor insists on it.
         String goal1 = this.nextCompound();
         // Form the remaining compounds into a list.  We will reuse the list for each subsystem path.
         List<String> goals = new ArrayList<String>(this.getNumLeft());
         while (this.hasNextCompound())
             goals.add(this.nextCompound());
-        // For each subsystem path, we take its output compound and build a path from it.
-        for (Pathway subsysPath : subsysPaths) {
-            // Get the output of this subsystem path and trace it through the compounds.
-            String start = subsysPath.getOutput();
-            this.showStatus("Computing path for " + start + ".");
-            Pathway outPath = model.getPathway(start, goal1);
-            Iterator<String> iter = goals.iterator();
-            while (outPath != null && iter.hasNext())
-                outPath = model.extendPathway(outPath, iter.next());
+        // With a single goal, try the multi-source search first.
+        Pathway retVal = null;
+        if (goals.isEmpty())
+            retVal = this.computeByNetwork(goal1);
+        if (retVal == null)
+            retVal = this.computeByCandidate(goal1, goals);
+        return retVal;
+    }
+
+    @Override
+    protected Collection<String> getLegSources() {
+        return this.subsysPaths.stream().map(x -> x.getOutput()).collect(Collectors.toSet());
+    }
+
+    /**
+     * Find the best candidate using a single multi-source search of the reaction network to the
+     * goal.  This is only valid when there are no further goals.
+     *
+     * @param goal1			goal compound
+     *
+     * @return the best subsystem path extended to the goal, or NULL if the search failed
+     */
+    private Pathway computeByNetwork(String goal1) {
+        Pathway retVal = null;
+        if (this.network != null) {
+            this.showStatus("Searching from all " + this.subsysPaths.size() + " subsystem outputs to " + goal1 + ".");
+            // Map each output compound to its best subsystem path and that path's score.
+            Map<String, SubsystemPath> sourcePaths = new HashMap<String, SubsystemPath>();
+            Map<String, Long> sources = new HashMap<String, Long>();
+            for (SubsystemPath subsysPath : this.subsysPaths) {
+                String output = subsysPath.getOutput();
+                long score = this.scorePaths(0, subsysPath.size());
+                Long oldScore = sources.get(output);
+                if (oldScore == null || score < oldScore) {
+                    sources.put(output, score);
+                    sourcePaths.put(output, subsysPath);
+                }
+            }
+            // The scores are linear in the output length, so this is the cost of one reaction.
+            long stepCost = this.scorePaths(1, 0) - this.scorePaths(0, 0);
+            Pathway outPath = new NetworkSearch(this.network).getPathway(sources, stepCost, goal1);
             if (outPath != null)
-                outputs.put(outPath, subsysPath);
+                retVal = this.joinPaths(sourcePaths.get(outPath.getInput()), outPath);
+        }
+        return retVal;
+    }
+
+    /**
+     * Find the best candidate by evaluating each subsystem path separately.
+     *
+     * @param goal1			first goal compound
+     * @param goals			remaining goal compounds
+     *
+     * @return the best subsystem path extended through the goals, or NULL if none could be extended
+     */
+    private Pathway computeByCandidate(String goal1, List<String> goals) {
+        // Put the pathways in a map.  Each output path found is mapped to the original path.
+        var outputs = new HashMap<Pathway, SubsystemPath>(this.subsysPaths.size() * 3 / 2 + 1);
+        // For each subsystem path, we take its output compound and build a path from it.  Each of
+        // these is a separate task.
+        final int nPaths = this.subsysPaths.size();
+        // Searches in the model are serialized on the model's lock, so they get only one thread.
+        final int nThreads = (this.network == null ? 1 : Math.min(nPaths, Runtime.getRuntime().availableProcessors()));
+        this.showStatus("Computing paths for " + nPaths + " subsystem pathways using " + nThreads + " threads.");
+        this.bound = new AtomicLong(Long.MAX_VALUE);
+        List<SubsystemPath> candidates = new ArrayList<SubsystemPath>(this.subsysPaths);
+        candidates.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        ExecutorService workers = Executors.newFixedThreadPool(nThreads, r -> {
+            Thread retVal = new Thread(r, "SubsystemFinder");
+            retVal.setDaemon(true);
+            return retVal;
+        });
+        try {
+            CompletionService<Map.Entry<Pathway, SubsystemPath>> tasks = new ExecutorCompletionService<>(workers);
+            for (SubsystemPath subsysPath : candidates)
+                tasks.submit(() -> new AbstractMap.SimpleEntry<Pathway, SubsystemPath>(
+                        this.computeOutPath(subsysPath, goal1, goals), subsysPath));
+            // Collect the results as they come in.  Progress is shown from this thread, so an abort
+            // request will stop the search.
+            int done = 0;
+            while (done < nPaths) {
+                Future<Map.Entry<Pathway, SubsystemPath>> result = tasks.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    done++;
+                    var paths = result.get();
+                    if (paths.getKey() != null)
+                        outputs.put(paths.getKey(), paths.getValue());
+                }
+                this.showProgress((double) done / nPaths);
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else
+                throw new RuntimeException("Error computing subsystem path: " + cause.toString(), cause);
+        } finally {
+            // If we are aborting, this abandons the remaining searches.
+            workers.shutdownNow();
         }
         Pathway retVal = null;
         // Only proceed if we found a path.
         if (outputs.size() > 0) {
             // Pick the shortest output path.
             var paths = this.findBest(outputs);
-            // The key here is the output path, and the value is the subsystem path.  Get
-            // a copy of the subsystem path and append the output path to it.
-            retVal = paths.getValue().clone();
-            retVal.append(paths.getKey());
+            // The key here is the output path, and the value is the subsystem path.
+            retVal = this.joinPaths(paths.getValue(), paths.getKey());
+        }
+        return retVal;
+    }
+
+    /**
+     * Compute the pathway from a subsystem path's output through the goal compounds.  The search is
+     * abandoned if the candidate cannot beat the best score found so far.
+     *
+     * @param subsysPath	subsystem path whose output is the start of the pathway
+     * @param goal1			first goal compound
+     * @param goals			remaining goal compounds
+     *
+     * @return the pathway found, or NULL if there is none or it cannot be the best
+     */
+    private Pathway computeOutPath(SubsystemPath subsysPath, String goal1, List<String> goals) {
+        Pathway retVal = null;
+        final int subsysLen = subsysPath.size();
+        if (! this.isBeaten(0, subsysLen)) {
+            retVal = this.getPathway(subsysPath.getOutput(), goal1);
+            Iterator<String> iter = goals.iterator();
+            while (retVal != null && iter.hasNext()) {
+                if (this.isBeaten(retVal.size(), subsysLen))
+                    retVal = null;
+                else
+                    retVal = this.extendPathway(retVal, iter.next());
+            }
+            if (retVal != null) {
+                // Here we have a complete candidate.  Update the bound.
+                final long score = this.scorePaths(retVal.size(), subsysLen);
+                this.bound.accumulateAndGet(score, Math::min);
+            }
         }
         return retVal;
     }
 
+    /**
+     * @return TRUE if a partial candidate with the specified path lengths cannot beat the best score found so far
+     *
+     * @param outLen		length of the partial output path
+     * @param subsysLen		length of the subsystem path
+     */
+    private boolean isBeaten(int outLen, int subsysLen) {
+        return this.scorePaths(outLen, subsysLen) > this.bound.get();
+    }
+
     /**
      * @return the best pathway for this operation
      *
-     * @param outputs	output pathways to choose from
+     * @param outputs	output pathways to choose from, mapped to their subsystem pathways
      */
-    protected abstract Map.Entry<Pathway, Pathway> findBest(Map<Pathway, Pathway> outputs);
+    protected Map.Entry<Pathway, SubsystemPath> findBest(Map<Pathway, SubsystemPath> outputs) {
+        // We are guaranteed not to be called if the map is empty.
+        Iterator<Map.Entry<Pathway, SubsystemPath>> iter = outputs.entrySet().iterator();
+        var retVal = iter.next();
+        long bestScore = this.scorePaths(retVal.getKey().size(), retVal.getValue().size());
+        while (iter.hasNext()) {
+            var curr = iter.next();
+            long score = this.scorePaths(curr.getKey().size(), curr.getValue().size());
+            if (score < bestScore) {
+                retVal = curr;
+                bestScore = score;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Score a candidate pathway.  Lower scores are better.  The score must never decrease when either
+     * length increases, since partial candidates are abandoned based on it, and it must be linear in
+     * the output length, since the multi-source search adds a fixed cost per reaction.
+     *
+     * @param outLen		length of the output pathway
+     * @param subsysLen		length of the subsystem pathway
+     *
+     * @return the score for a candidate with the specified path lengths
+     */
+    protected abstract long scorePaths(int outLen, int subsysLen);
+
+    /**
+     * Form the final pathway from a subsystem path and the output path that extends it.  This is where the
+     * subsystem path is parsed, if it has not been already.
+     *
+     * @param subsysPath	descriptor of the subsystem path
+     * @param outPath		output path starting from the subsystem path's output
+     *
+     * @return a copy of the subsystem path with the output path appended
+     */
+    private Pathway joinPaths(SubsystemPath subsysPath, Pathway outPath) {
+        Pathway retVal;
+        try {
+            retVal = subsysPath.getPathway(this.getModel()).clone();
+        } catch (IOException | ParseFailureException | JsonException e) {
+            throw new RuntimeException("Error loading subsystem path " + subsysPath.getName() + ": " + e.toString(), e);
+        }
+        retVal.append(outPath);
+        return retVal;
+    }
 
     /**
-     * @return the subsystem path collection
+     * @return the subsystem path descriptor collection
      */
-    protected Collection<Pathway> getSubsysPaths() {
+    protected Collection<SubsystemPath> getSubsysPaths() {
         return this.subsysPaths;
     }
 
@@ -4,12 +4,16 @@
 package org.theseed.meta.finders;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.theseed.meta.controllers.MetaCompound;
 import org.theseed.meta.jfx.IModelManager;
+import org.theseed.meta.network.PathwayCache;
 import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.Pathway;
 
 /**
  * This is the base class for actions that operate on the main list of compounds.  It is
@@ -20,6 +24,11 @@ import org.theseed.metabolism.MetaModel;
  * Compound list actions take place in the background, so the GUI needs to be frozen against
  * modification while it runs.
  *
+ * The metabolic model does not promise to be thread-safe, and several actions may search the same
+ * model from worker threads at once.  Every search in the model is therefore made while holding the
+ * model's lock.  This means searches in the model are effectively serialized; only the searches on
+ * the flow network, which is not modified once it is built, truly run in parallel.
+ *
  * @author Bruce Parrello
  *
  */
@@ -33,8 +42,12 @@ public abstract class CompoundListAction {
     private Iterator<MetaCompound> compoundIter;
     /** number of compounds to process */
     private int compoundCount;
+    /** IDs of all the compounds to process, in order */
+    private List<String> compoundIds;
     /** controlling command processor */
     private IModelManager processor;
+    /** pathway search cache, or NULL if there is none */
+    private PathwayCache pathCache;
 
     /**
      * Construct a compound list action for a specified controlling command processor.
@@ -44,8 +57,10 @@ public abstract class CompoundListAction {
     public CompoundListAction(IModelManager processor) {
         this.processor = processor;
         this.model = processor.getModel();
+        this.pathCache = processor.getPathCache();
         this.compoundIter = processor.getCompounds().iterator();
         this.compoundCount = processor.getCompounds().size();
+        this.compoundIds = processor.getCompounds().stream().map(x -> x.getId()).collect(Collectors.toList());
     }
 
     /**
@@ -63,6 +78,13 @@ public abstract class CompoundListAction {
         return this.compoundCount;
     }
 
+    /**
+     * @return the IDs of all the compounds to process, in order, including the ones already processed
+     */
+    protected List<String> getCompoundIds() {
+        return this.compoundIds;
+    }
+
     /**
      * @return TRUE if there are more compounds left to process
      */
@@ -77,6 +99,44 @@ public abstract class CompoundListAction {
         return model;
     }
 
+    /**
+     * Find the pathway between two compounds.  The pathway cache is used if there is one.
+     *
+     * @param start		BiGG ID of the starting compound
+     * @param goal		BiGG ID of the goal compound
+     *
+     * @return the pathway found, or NULL if there is none
+     */
+    protected Pathway getPathway(String start, String goal) {
+        Pathway retVal;
+        if (this.pathCache == null) {
+            synchronized (this.model) {
+                retVal = this.model.getPathway(start, goal);
+            }
+        } else
+            retVal = this.pathCache.getPathway(this.model, start, goal);
+        return retVal;
+    }
+
+    /**
+     * Extend a pathway to a new compound.  The pathway cache is used if there is one.
+     *
+     * @param path		pathway to extend
+     * @param goal		BiGG ID of the new goal compound
+     *
+     * @return the extended pathway, or NULL if there is none
+     */
+    protected Pathway extendPathway(Pathway path, String goal) {
+        Pathway retVal;
+        if (this.pathCache == null) {
+            synchronized (this.model) {
+                retVal = this.model.extendPathway(path, goal);
+            }
+        } else
+            retVal = this.pathCache.extendPathway(this.model, path, goal);
+        return retVal;
+    }
+
     /**
      * Display a status message on the controlling GUI model manager.
      *
@@ -4,6 +4,8 @@
 package org.theseed.meta.finders;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 
 import org.theseed.basic.ParseFailureException;
 import org.theseed.metabolism.Pathway;
@@ -31,6 +33,11 @@ public class ExtendPathFinder extends PathFinder {
             throw new ParseFailureException("At least one metabolite is required to extend a path.");
     }
 
+    @Override
+    protected Collection<String> getLegSources() {
+        return Collections.singleton(this.path1.getOutput());
+    }
+
     @Override
     public Pathway computePath() {
         return this.finishPath(this.path1);
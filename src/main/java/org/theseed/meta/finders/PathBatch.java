@@ -0,0 +1,548 @@
+/**
+ *
+ */
+package org.theseed.meta.finders;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.meta.controllers.MetaCompound;
+import org.theseed.meta.jfx.InterruptException;
+import org.theseed.meta.network.IReactionNetwork;
+import org.theseed.meta.network.PathwayCache;
+import org.theseed.meta.storage.SubsystemPath;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.Pathway;
+
+import javafx.concurrent.Task;
+
+/**
+ * This object runs a batch of path queries against the currently-loaded model.  Each query is a list of
+ * compounds with a path type and a loop flag, and the queries are run concurrently by a pool of workers.
+ * Each pathway found is written to the output directory as a pathway file named after its query, and a
+ * summary of the results, including timings, is written to the output directory when the batch is done.
+ *
+ * The query file is tab-delimited, with a header line whose first two columns must be "name" and "type".
+ * Each remaining line contains (0)
+ * a query name, (1) a path type, (2) a loop flag ("Y" to loop the pathway), and (3) a comma-delimited list
+ * of compound BiGG IDs.  Blank lines and lines beginning with "#" are ignored.  The query name is used to
+ * form the output file names, so it must be unique and cannot contain path separators.
+ *
+ * Queries that need the starting pathway or the subsystem pathways get them from the controlling processor
+ * when the batch is created, so that no worker needs to ask the user for anything.  All the queries use the
+ * flow network and search engine in effect when the batch is created.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PathBatch {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(PathBatch.class);
+    /** controlling command processor */
+    private PathFinder.IParms processor;
+    /** underlying model */
+    private MetaModel model;
+    /** reaction network for the current flow scenario */
+    private IReactionNetwork network;
+    /** pathway search cache */
+    private PathwayCache pathCache;
+    /** search engine to use */
+    private PathFinder.Engine engine;
+    /** starting pathway for extension queries, or NULL if none is needed */
+    private Pathway startPath;
+    /** subsystem pathways for subsystem queries, or NULL if none are needed */
+    private Collection<SubsystemPath> subsysPaths;
+    /** list of queries to run */
+    private List<Query> queries;
+    /** output directory */
+    private File outDir;
+    /** number of worker threads */
+    private int nThreads;
+    /** number of worker threads actually used by the last run */
+    private int threadsUsed;
+    /** TRUE if the queries should stop */
+    private volatile boolean stopFlag;
+    /** name of the summary file in the output directory */
+    public static final String SUMMARY_NAME = "batch.summary.tsv";
+    /** path types that require the starting pathway */
+    private static final Set<PathFinder.Type> START_TYPES = EnumSet.of(PathFinder.Type.EXTEND,
+            PathFinder.Type.BACKFILL);
+    /** path types that require the subsystem pathways */
+    private static final Set<PathFinder.Type> SUBSYS_TYPES = EnumSet.of(PathFinder.Type.SUBSYSTEM,
+            PathFinder.Type.SUBSYSPATH);
+    /** number of milliseconds to wait between progress checks */
+    private static final long POLL_INTERVAL = 100;
+
+    /**
+     * This enumeration describes the possible outcomes of a query.
+     */
+    public static enum Status {
+        /** the query has not been run */
+        PENDING,
+        /** a pathway was found and saved */
+        FOUND,
+        /** the reachability index shows no pathway is possible */
+        IMPOSSIBLE,
+        /** the search did not find a pathway */
+        NOT_FOUND,
+        /** the query could not be run */
+        ERROR;
+    }
+
+    /**
+     * This object represents a single query.  It acts as the controlling processor for the query's
+     * path finder, passing model requests through to the batch.
+     */
+    public class Query implements PathFinder.IParms {
+
+        /** name of the query */
+        private String name;
+        /** type of path search */
+        private PathFinder.Type type;
+        /** TRUE if the pathway should be looped */
+        private boolean looped;
+        /** compounds to process, in order */
+        private List<MetaCompound> compounds;
+        /** outcome of the query */
+        private Status status;
+        /** error or status message for the query */
+        private String message;
+        /** number of reactions in the pathway found, or -1 if none was found */
+        private int reactions;
+        /** number of alternative pathways saved */
+        private int alternatives;
+        /** number of milliseconds taken to run the query */
+        private long duration;
+
+        /**
+         * Create a query.
+         *
+         * @param name			name of the query
+         * @param type			type of path search
+         * @param looped		TRUE if the pathway should be looped
+         * @param compoundIds	BiGG IDs of the compounds to process, in order
+         */
+        protected Query(String name, PathFinder.Type type, boolean looped, List<String> compoundIds) {
+            this.name = name;
+            this.type = type;
+            this.looped = looped;
+            this.compounds = compoundIds.stream().map(x -> new MetaCompound(x, x)).collect(Collectors.toList());
+            this.status = Status.PENDING;
+            this.message = "";
+            this.reactions = -1;
+            this.alternatives = 0;
+            this.duration = 0;
+        }
+
+        /**
+         * Run this query and save the pathway found.  All errors other than an abort request are
+         * recorded in the query.
+         *
+         * @return this query
+         */
+        protected Query execute() {
+            long start = System.currentTimeMillis();
+            try {
+                PathFinder finder = this.type.create(this);
+                String impossible = finder.findImpossibleLeg();
+                if (impossible != null) {
+                    this.status = Status.IMPOSSIBLE;
+                    this.message = impossible;
+                } else {
+                    Pathway path = finder.computePath();
+                    if (path == null) {
+                        this.status = Status.NOT_FOUND;
+                        this.message = "Could not find requested pathway.";
+                    } else {
+                        path.save(this.getOutFile(""));
+                        this.status = Status.FOUND;
+                        this.reactions = path.size();
+                        this.message = finder.describeResult(path);
+                    }
+                }
+            } catch (InterruptException e) {
+                throw e;
+            } catch (Exception e) {
+                this.status = Status.ERROR;
+                this.message = e.toString();
+            }
+            this.duration = System.currentTimeMillis() - start;
+            log.info("Query {} completed in {} ms:  {}", this.name, this.duration, this.message);
+            return this;
+        }
+
+        /**
+         * @return the output file for a pathway from this query
+         *
+         * @param suffix	suffix to distinguish the pathway from the query's main result
+         */
+        private File getOutFile(String suffix) {
+            return new File(PathBatch.this.outDir, this.name + suffix + Pathway.FILE_EXT);
+        }
+
+        @Override
+        public List<MetaCompound> getCompounds() {
+            return this.compounds;
+        }
+
+        @Override
+        public MetaModel getModel() {
+            return PathBatch.this.model;
+        }
+
+        @Override
+        public IReactionNetwork getNetwork() {
+            return PathBatch.this.network;
+        }
+
+        @Override
+        public PathwayCache getPathCache() {
+            return PathBatch.this.pathCache;
+        }
+
+        @Override
+        public Pathway getStartPathway() {
+            return PathBatch.this.startPath;
+        }
+
+        @Override
+        public Collection<SubsystemPath> getSubsysPathways() {
+            return PathBatch.this.subsysPaths;
+        }
+
+        @Override
+        public boolean getLoopFlag() {
+            return this.looped;
+        }
+
+        @Override
+        public PathFinder.Engine getEngine() {
+            return PathBatch.this.engine;
+        }
+
+        /**
+         * The shortest alternative is the query's result, so only the others are saved here.
+         */
+        @Override
+        public void showAlternative(Pathway path, int rank) {
+            if (rank > 1) {
+                try {
+                    path.save(this.getOutFile("." + rank));
+                    this.alternatives++;
+                } catch (IOException e) {
+                    log.error("Error saving alternative {} for query {}: {}", rank, this.name, e.toString());
+                }
+            }
+        }
+
+        @Override
+        public void showProgress(double p) {
+            if (PathBatch.this.stopFlag)
+                throw new InterruptException();
+        }
+
+        @Override
+        public void showStatus(String msg) {
+            log.debug("Query {}: {}", this.name, msg);
+        }
+
+        @Override
+        public void showCompleted() {
+        }
+
+        /**
+         * @return the name of this query
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return the outcome of this query
+         */
+        public Status getStatus() {
+            return this.status;
+        }
+
+        /**
+         * @return the number of milliseconds taken to run this query
+         */
+        public long getDuration() {
+            return this.duration;
+        }
+
+        /**
+         * @return the summary line for this query
+         */
+        protected String toSummary() {
+            String compoundList = this.compounds.stream().map(x -> x.getId()).collect(Collectors.joining(","));
+            return String.join("\t", this.name, this.type.name(), (this.looped ? "Y" : ""), compoundList,
+                    this.status.name(), Integer.toString(this.reactions), Integer.toString(this.alternatives),
+                    Long.toString(this.duration), this.message);
+        }
+
+    }
+
+    /**
+     * Create a batch of path queries.
+     *
+     * @param processor		controlling command processor
+     * @param queryFile		file containing the queries
+     * @param outDir		output directory for the pathways and the summary
+     * @param nThreads		number of worker threads to use
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    public PathBatch(PathFinder.IParms processor, File queryFile, File outDir, int nThreads)
+            throws IOException, ParseFailureException {
+        this.processor = processor;
+        this.model = processor.getModel();
+        this.network = processor.getNetwork();
+        this.pathCache = processor.getPathCache();
+        this.engine = processor.getEngine();
+        this.outDir = outDir;
+        this.nThreads = Math.max(1, nThreads);
+        this.threadsUsed = 1;
+        this.stopFlag = false;
+        this.queries = this.readQueries(queryFile);
+        if (this.queries.isEmpty())
+            throw new ParseFailureException("No queries found in " + queryFile + ".");
+        // Get the pathways the queries will need.
+        Set<PathFinder.Type> types = this.queries.stream().map(x -> x.type)
+                .collect(Collectors.toCollection(() -> EnumSet.noneOf(PathFinder.Type.class)));
+        this.startPath = null;
+        if (types.stream().anyMatch(x -> START_TYPES.contains(x))) {
+            this.startPath = processor.getStartPathway();
+            if (this.startPath == null)
+                throw new ParseFailureException("A starting pathway is required for this batch.");
+        }
+        this.subsysPaths = null;
+        if (types.stream().anyMatch(x -> SUBSYS_TYPES.contains(x))) {
+            this.subsysPaths = processor.getSubsysPathways();
+            if (this.subsysPaths == null)
+                throw new ParseFailureException("A subsystem is required for this batch.");
+        }
+        if (! this.outDir.isDirectory() && ! this.outDir.mkdirs())
+            throw new IOException("Could not create output directory " + this.outDir + ".");
+    }
+
+    /**
+     * Read the queries from a query file.
+     *
+     * @param queryFile		file containing the queries
+     *
+     * @return a list of the queries in the file
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    private List<Query> readQueries(File queryFile) throws IOException, ParseFailureException {
+        List<String> lines = Files.readAllLines(queryFile.toPath(), StandardCharsets.UTF_8);
+        List<Query> retVal = new ArrayList<Query>(lines.size());
+        Set<String> names = new HashSet<String>(lines.size() * 4 / 3 + 1);
+        // Insure the header line is present, so we do not skip a real query.
+        if (lines.isEmpty() || ! isHeader(lines.get(0)))
+            throw new ParseFailureException("Query file " + queryFile + " must begin with a header line.");
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (! line.isBlank() && ! line.startsWith("#")) {
+                String[] fields = line.split("\t");
+                if (fields.length < 4)
+                    throw new ParseFailureException("Line " + (i + 1) + " of " + queryFile + " has too few fields.");
+                String name = fields[0].trim();
+                if (! isValidName(name))
+                    throw new ParseFailureException("Invalid query name \"" + name + "\" on line " + (i + 1)
+                            + " of " + queryFile + ".");
+                if (! names.add(name))
+                    throw new ParseFailureException("Duplicate query name \"" + name + "\" in " + queryFile + ".");
+                PathFinder.Type type;
+                try {
+                    type = PathFinder.Type.valueOf(fields[1].trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new ParseFailureException("Invalid path type \"" + fields[1] + "\" on line " + (i + 1)
+                            + " of " + queryFile + ".");
+                }
+                boolean looped = BooleanUtils.toBoolean(fields[2].trim());
+                List<String> compounds = Arrays.stream(fields[3].split(",")).map(x -> x.trim())
+                        .filter(x -> ! x.isEmpty()).collect(Collectors.toList());
+                retVal.add(this.new Query(name, type, looped, compounds));
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if the specified line is a valid query file header
+     *
+     * @param line		first line of the query file
+     */
+    private static boolean isHeader(String line) {
+        String[] fields = line.split("\t");
+        return (fields.length >= 2 && fields[0].trim().equalsIgnoreCase("name")
+                && fields[1].trim().equalsIgnoreCase("type"));
+    }
+
+    /**
+     * @return TRUE if the specified query name can safely be used to form an output file name
+     *
+     * @param name		query name to check
+     */
+    private static boolean isValidName(String name) {
+        return (! name.isEmpty() && ! name.equals(".") && ! name.equals("..") && name.indexOf('/') < 0
+                && name.indexOf('\\') < 0 && name.indexOf(File.separatorChar) < 0);
+    }
+
+    /**
+     * @return TRUE if some of the queries need the model to reflect the current flow modifiers
+     */
+    public boolean needsModel() {
+        return (this.engine != PathFinder.Engine.BIDIRECTIONAL || this.queries.stream().anyMatch(x -> x.looped));
+    }
+
+    /**
+     * Run all the queries and write the summary file.  Progress is shown from the calling thread, so
+     * an abort request from the controlling processor will stop the batch.
+     *
+     * @return the number of pathways found
+     *
+     * @throws IOException
+     */
+    public int run() throws IOException {
+        final int nQueries = this.queries.size();
+        // Searches in the model are serialized on the model's lock, so they get only one thread.
+        final int threads = (this.engine == PathFinder.Engine.BIDIRECTIONAL
+                ? Math.max(1, Math.min(nQueries, this.nThreads)) : 1);
+        this.threadsUsed = threads;
+        this.processor.showStatus("Running " + nQueries + " path queries using " + threads + " threads.");
+        long start = System.currentTimeMillis();
+        int retVal = 0;
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread retThread = new Thread(r, "PathBatch");
+            retThread.setDaemon(true);
+            return retThread;
+        });
+        try {
+            CompletionService<Query> tasks = new ExecutorCompletionService<Query>(workers);
+            for (Query query : this.queries)
+                tasks.submit(() -> query.execute());
+            int done = 0;
+            while (done < nQueries) {
+                Future<Query> result = tasks.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    done++;
+                    Query query = result.get();
+                    if (query.getStatus() == Status.FOUND)
+                        retVal++;
+                    this.processor.showStatus(String.format("%d of %d queries complete, %d pathways found.",
+                            done, nQueries, retVal));
+                }
+                this.processor.showProgress((double) done / nQueries);
+            }
+        } catch (InterruptException e) {
+            this.stopFlag = true;
+            throw e;
+        } catch (InterruptedException e) {
+            this.stopFlag = true;
+            throw new InterruptException();
+        } catch (ExecutionException e) {
+            this.stopFlag = true;
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else
+                throw new IOException("Error running path query: " + cause.toString(), cause);
+        } finally {
+            workers.shutdownNow();
+        }
+        long duration = System.currentTimeMillis() - start;
+        this.writeSummary(duration);
+        this.processor.showStatus(String.format("%d pathways found for %d queries in %1.1f seconds.", retVal,
+                nQueries, duration / 1000.0));
+        log.info("Path batch complete.  Pathway cache status:  {}.", this.pathCache);
+        return retVal;
+    }
+
+    /**
+     * Write the summary file for the batch.
+     *
+     * @param duration		total number of milliseconds taken by the batch
+     *
+     * @throws IOException
+     */
+    private void writeSummary(long duration) throws IOException {
+        File summaryFile = new File(this.outDir, SUMMARY_NAME);
+        try (PrintWriter writer = new PrintWriter(summaryFile, StandardCharsets.UTF_8)) {
+            writer.println("name\ttype\tlooped\tcompounds\tstatus\treactions\talternatives\tms\tmessage");
+            for (Query query : this.queries)
+                writer.println(query.toSummary());
+            writer.format("# %d queries run in %d ms using %d threads.%n", this.queries.size(), duration,
+                    this.threadsUsed);
+        }
+    }
+
+    /**
+     * @return the queries in this batch
+     */
+    public List<Query> getQueries() {
+        return this.queries;
+    }
+
+    /**
+     * This object runs the batch in the background.  Note that the status message should not be
+     * overridden after it is done, since it may contain error information.
+     */
+    public class Runner extends Task<Boolean> {
+
+        /** number of pathways found, or -1 if the batch failed */
+        private int found;
+
+        @Override
+        protected Boolean call() throws Exception {
+            boolean retVal = false;
+            try {
+                this.found = PathBatch.this.run();
+                retVal = true;
+            } catch (Exception e) {
+                PathBatch.this.processor.showStatus("Error: " + e.toString());
+                this.found = -1;
+            }
+            // Denote this task is done.  To avoid a race condition, we save the result immediately.
+            PathBatch.this.processor.showCompleted();
+            return retVal;
+        }
+
+        /**
+         * @return the number of pathways found, or -1 if the batch failed
+         */
+        public int getResult() {
+            return this.found;
+        }
+
+    }
+
+}
@@ -4,11 +4,18 @@
 package org.theseed.meta.finders;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.theseed.basic.ParseFailureException;
 import org.theseed.meta.jfx.IModelManager;
+import org.theseed.meta.network.BidirectionalSearch;
+import org.theseed.meta.network.IReactionNetwork;
+import org.theseed.meta.network.ReachabilityIndex;
+import org.theseed.metabolism.MetaModel;
 import org.theseed.metabolism.Pathway;
 
 import com.github.cliftonlabs.json_simple.JsonException;
@@ -17,7 +24,8 @@ import javafx.concurrent.Task;
 
 /**
  * This object manages the search for a metabolic pathway.  It allows customizing the search using
- * a path type.
+ * a path type, and the individual searches can be performed by the model or by a search engine
+ * running on the current flow network.
  *
  * @author Bruce Parrello
  *
@@ -29,6 +37,10 @@ public abstract class PathFinder extends CompoundListAction {
     protected static Logger log = LoggerFactory.getLogger(PathFinder.class);
     /** TRUE if the pathway should be looped */
     private boolean wantLoop;
+    /** flow network to search, or NULL if the model should do the searches */
+    private IReactionNetwork network;
+    /** current flow network, or NULL if none is available */
+    private IReactionNetwork flowNetwork;
 
     /**
      * This interface defines the parameters the client must have available to the path finder.  Often,
@@ -41,6 +53,30 @@ public abstract class PathFinder extends CompoundListAction {
          */
         public boolean getLoopFlag();
 
+        /**
+         * @return the search engine to use
+         */
+        public Engine getEngine();
+
+        /**
+         * Display one of several alternative pathways while the search is still running.  This
+         * may be called from a background thread.
+         *
+         * @param path		pathway to display
+         * @param rank		rank of the pathway (1 for the shortest)
+         */
+        public void showAlternative(Pathway path, int rank);
+
+    }
+
+    /**
+     * This enumeration describes the engines that can perform the individual pathway searches.
+     */
+    public static enum Engine {
+        /** use the unidirectional search in the metabolic model */
+        MODEL,
+        /** use a bidirectional, landmark-guided search on the current flow network */
+        BIDIRECTIONAL;
     }
 
     /**
@@ -81,6 +117,13 @@ public abstract class PathFinder extends CompoundListAction {
             public PathFinder create(IParms processor) throws ParseFailureException, IOException, JsonException {
                 return new BackfillPathFinder(processor);
             }
+        },
+        /** find the shortest distinct pathways through the specified metabolites and display each one */
+        ALTERNATIVES {
+            @Override
+            public PathFinder create(IParms processor) throws ParseFailureException, IOException, JsonException {
+                return new AlternativePathFinder(processor);
+            }
         };
 
         /**
@@ -109,6 +152,33 @@ public abstract class PathFinder extends CompoundListAction {
         super(processor);
         processor.getModel().setReporter(processor);
         this.wantLoop = processor.getLoopFlag();
+        this.network = null;
+        this.flowNetwork = processor.getNetwork();
+        if (processor.getEngine() == Engine.BIDIRECTIONAL) {
+            this.network = processor.getNetwork();
+            if (this.network == null)
+                throw new ParseFailureException("No flow network is available for a bidirectional search.");
+        }
+    }
+
+    @Override
+    protected Pathway getPathway(String start, String goal) {
+        Pathway retVal;
+        if (this.network == null)
+            retVal = super.getPathway(start, goal);
+        else
+            retVal = new BidirectionalSearch(this.network).getPathway(start, goal);
+        return retVal;
+    }
+
+    @Override
+    protected Pathway extendPathway(Pathway path, String goal) {
+        Pathway retVal;
+        if (this.network == null)
+            retVal = super.extendPathway(path, goal);
+        else
+            retVal = new BidirectionalSearch(this.network).extendPathway(path, goal);
+        return retVal;
     }
 
     /**
@@ -120,6 +190,72 @@ public abstract class PathFinder extends CompoundListAction {
      */
     public abstract Pathway computePath();
 
+    /**
+     * Use the reachability index to check the legs of the search.  Each leg goes from the previous
+     * compound (or the leg sources, for the first leg) to the next compound in the list, and there may
+     * be a final leg to a fixed target.  The check is only made when the search runs on the flow network,
+     * since the model's search does not see the same network.  If the index has not been built yet, it
+     * is built here, so this method should be run in the background.
+     *
+     * @return a message describing the first leg that cannot be completed (or the missing start, if there
+     * 		   are no compounds), or NULL if every leg is possible
+     */
+    public String findImpossibleLeg() {
+        String retVal = null;
+        if (this.flowNetwork != null && this.isNetworkSearch()) {
+            ReachabilityIndex reachability = this.flowNetwork.getReachability();
+            List<String> compounds = this.getCompoundIds();
+            Collection<String> sources = this.getLegSources();
+            int i = 0;
+            if (sources.isEmpty()) {
+                // Here the first compound in the list is the start of the pathway.
+                if (compounds.isEmpty())
+                    retVal = "No starting compound was specified for the search.";
+                else
+                    sources = Collections.singleton(compounds.get(0));
+                i = 1;
+            }
+            while (retVal == null && i < compounds.size()) {
+                String target = compounds.get(i);
+                if (! reachability.canReachAny(sources, target))
+                    retVal = describeLeg(sources, target);
+                sources = Collections.singleton(target);
+                i++;
+            }
+            String finalTarget = this.getLegTarget();
+            if (retVal == null && finalTarget != null && ! reachability.canReachAny(sources, finalTarget))
+                retVal = describeLeg(sources, finalTarget);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return a message describing an impossible leg of the search
+     *
+     * @param sources	possible starting compounds for the leg
+     * @param target	target compound for the leg
+     */
+    private static String describeLeg(Collection<String> sources, String target) {
+        String from = (sources.size() == 1 ? sources.iterator().next()
+                : "any of " + sources.size() + " starting compounds");
+        return "No pathway from " + from + " to " + target + " is possible with the current flow modifiers.";
+    }
+
+    /**
+     * @return the possible starting compounds for the first leg of the search, or an empty collection
+     * 		   if the first compound in the list is the start
+     */
+    protected Collection<String> getLegSources() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the target of the final leg of the search after the compound list, or NULL if there is none
+     */
+    protected String getLegTarget() {
+        return null;
+    }
+
     /**
      * This is a workhorse method that extends the current pathway through the remaining compounds
      * in the iterator.  Pretty much all of the subclasses will end with this after starting the
@@ -132,16 +268,57 @@ public abstract class PathFinder extends CompoundListAction {
         while (retVal != null && this.hasNextCompound()) {
             String next = nextCompound();
             this.showStatus("Extending pathway to " + next + ".");
-            retVal = getModel().extendPathway(retVal, next);
+            retVal = this.extendPathway(retVal, next);
         }
         // Check for a looped path.
-        if (retVal != null && this.wantLoop) {
-            this.showStatus("Looping pathway back to " + retVal.getInput() + ".");
-            retVal = getModel().loopPathway(retVal);
+        if (retVal != null)
+            retVal = this.loopPath(retVal);
+        return retVal;
+    }
+
+    /**
+     * Loop a pathway back to its input, if looping was requested.
+     *
+     * @param path		pathway to loop
+     *
+     * @return the looped pathway, the original pathway if no loop is wanted, or NULL if the loop failed
+     */
+    protected Pathway loopPath(Pathway path) {
+        Pathway retVal = path;
+        if (this.wantLoop) {
+            this.showStatus("Looping pathway back to " + path.getInput() + ".");
+            MetaModel model = this.getModel();
+            synchronized (model) {
+                retVal = model.loopPathway(path);
+            }
         }
         return retVal;
     }
 
+    /**
+     * @return TRUE if this finder searches the flow network rather than the model
+     */
+    protected boolean isNetworkSearch() {
+        return (this.network != null);
+    }
+
+    /**
+     * @return TRUE if this finder displays its pathways while it runs, so the result should not be
+     * 		   displayed again
+     */
+    protected boolean isStreamed() {
+        return false;
+    }
+
+    /**
+     * @return a status message describing a successful result
+     *
+     * @param path		pathway found
+     */
+    protected String describeResult(Pathway path) {
+        return "Pathway contains " + Integer.toString(path.size()) + " reactions.";
+    }
+
     /**
      * This object runs the path search in the background.  Note that the status message should not be
      * overridden after it is done, since it may contain error information.
@@ -155,13 +332,21 @@ public abstract class PathFinder extends CompoundListAction {
         protected Boolean call() throws Exception {
             boolean retVal = false;
             try {
-                this.path = PathFinder.this.computePath();
-                if (this.path == null) {
-                    PathFinder.this.showStatus("Could not find requested pathway.");
+                // Insure the search is possible before we start.
+                String impossible = PathFinder.this.findImpossibleLeg();
+                if (impossible != null) {
+                    this.path = null;
+                    PathFinder.this.showStatus(impossible);
                     PathFinder.this.showProgress(0.0);
                 } else {
-                    PathFinder.this.showStatus("Pathway contains " + Integer.toString(this.path.size())
-                            + " reactions.");
+                    this.path = PathFinder.this.computePath();
+                    if (this.path == null) {
+                        PathFinder.this.showStatus("Could not find requested pathway.");
+                        PathFinder.this.showProgress(0.0);
+                    }
+                }
+                if (this.path != null) {
+                    PathFinder.this.showStatus(PathFinder.this.describeResult(this.path));
                     PathFinder.this.showProgress(1.0);
                     retVal = true;
                 }
@@ -181,6 +366,13 @@ public abstract class PathFinder extends CompoundListAction {
             return this.path;
         }
 
+        /**
+         * @return TRUE if the pathways found have already been displayed
+         */
+        public boolean isStreamed() {
+            return PathFinder.this.isStreamed();
+        }
+
     }
 
 }
@@ -32,7 +32,15 @@ public class PathSubsystemBuilder extends SubsystemBuilder {
 
     @Override
     protected Pathway getPath(String target) {
-        return this.getModel().extendPathway(path1, target);
+        return this.extendPathway(path1, target);
+    }
+
+    /**
+     * Each target is an independent extension of the starting pathway.
+     */
+    @Override
+    protected boolean isOrderIndependent() {
+        return true;
     }
 
 }
@@ -29,4 +29,12 @@ public class PointSubsystemBuilder extends SubsystemBuilder {
         return new Pathway(target);
     }
 
+    /**
+     * Each pathway is a single compound, so there are no dependencies.
+     */
+    @Override
+    protected boolean isOrderIndependent() {
+        return true;
+    }
+
 }
@@ -3,9 +3,17 @@
  */
 package org.theseed.meta.finders;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
 
 import org.theseed.basic.ParseFailureException;
+import org.theseed.meta.network.IReactionNetwork;
 import org.theseed.metabolism.Pathway;
 
 import com.github.cliftonlabs.json_simple.JsonException;
@@ -14,6 +22,11 @@ import com.github.cliftonlabs.json_simple.JsonException;
  * This subsystem builder uses the first compound in the compound list as a starting point and
  * builds the subsystem from the rest of the compounds, in order.
  *
+ * Each pathway is chained off the previous one, so a change to one compound affects all the pathways
+ * after it.  When the subsystem is built, a manifest is written listing the compounds and the flow
+ * fingerprint used.  On the next build, the longest prefix of the compound list that matches the
+ * manifest is left alone, and the build resumes from the last pathway in that prefix.
+ *
  * @author Bruce Parrello
  *
  */
@@ -22,19 +35,137 @@ public class SimpleSubsystemBuilder extends SubsystemBuilder {
     // FIELDS
     /** starting compound */
     private Pathway current;
+    /** IDs of all the compounds in the build, in order */
+    private List<String> compoundIds;
+    /** fingerprint of the flow modifiers for the build, or NULL if it is unknown */
+    private String fingerprint;
+    /** number of targets whose pathways are still up to date */
+    private int prefixLen;
+    /** name of the manifest file in the subsystem directory */
+    public static final String MANIFEST_NAME = "simple.manifest";
 
     public SimpleSubsystemBuilder(IParms processor) throws IOException, JsonException, ParseFailureException {
         super(processor);
         if (this.getNumLeft() < 2)
             throw new ParseFailureException("At least two compounds required to build a subsystem without a starting path.");
+        this.compoundIds = this.getCompoundIds();
+        IReactionNetwork network = processor.getNetwork();
+        this.fingerprint = (network == null ? null : network.getFingerprint());
         this.current = new Pathway(this.nextCompound());
+        this.prefixLen = 0;
+        this.findPrefix(processor);
+    }
+
+    /**
+     * Determine how many targets at the start of the compound list already have up-to-date pathways, and
+     * load the last of those pathways as the current one.
+     *
+     * @param processor		controlling command processor
+     */
+    private void findPrefix(IParms processor) {
+        File subDir = this.getSubsysDir();
+        if (subDir != null && this.fingerprint != null) {
+            File manifestFile = new File(subDir, MANIFEST_NAME);
+            List<String> oldIds = readManifest(manifestFile, this.fingerprint);
+            // A pathway is up to date if no other build has written it since the manifest.
+            final long built = manifestFile.lastModified();
+            int prefix = matchPrefix(oldIds, this.compoundIds, x -> this.isPathCurrent(x, built));
+            if (prefix > 0) {
+                try {
+                    this.current = this.loadPath(this.compoundIds.get(prefix), processor.getModel());
+                    this.prefixLen = prefix;
+                    log.info("{} subsystem pathways in {} are unchanged.", prefix, subDir);
+                } catch (IOException | ParseFailureException | JsonException e) {
+                    log.warn("Could not reload subsystem pathway for {}:  rebuilding all pathways.",
+                            this.compoundIds.get(prefix));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the number of targets whose pathways are unchanged since the previous build.  The starting
+     * compound must be the same in both builds, and each unchanged target must be in the same position in
+     * both builds and have a pathway that is still current.
+     *
+     * @param oldIds		compounds from the previous build, starting compound first
+     * @param newIds		compounds for the current build, starting compound first
+     * @param current		predicate that is TRUE if a target's pathway is still current
+     *
+     * @return the number of unchanged targets at the start of the list (not counting the starting compound)
+     */
+    static int matchPrefix(List<String> oldIds, List<String> newIds, Predicate<String> current) {
+        int retVal = 0;
+        if (! oldIds.isEmpty() && ! newIds.isEmpty() && oldIds.get(0).equals(newIds.get(0))) {
+            final int n = Math.min(oldIds.size(), newIds.size());
+            int i = 1;
+            while (i < n && oldIds.get(i).equals(newIds.get(i)) && current.test(newIds.get(i)))
+                i++;
+            retVal = i - 1;
+        }
+        return retVal;
+    }
+
+    /**
+     * Read the compound list from a manifest file.
+     *
+     * @param manifestFile		manifest file to read
+     * @param fingerprint		flow fingerprint for the current build
+     *
+     * @return the compounds from the previous build, or an empty list if the manifest is missing, unreadable,
+     * 		   or for a different flow
+     */
+    static List<String> readManifest(File manifestFile, String fingerprint) {
+        List<String> retVal = Collections.emptyList();
+        if (manifestFile.canRead()) {
+            try {
+                List<String> lines = Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8);
+                if (! lines.isEmpty() && lines.get(0).equals(fingerprint))
+                    retVal = lines.subList(1, lines.size());
+            } catch (IOException e) {
+                log.warn("Could not read subsystem manifest {}: {}", manifestFile, e.toString());
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    protected boolean isUnchanged(String target) {
+        boolean retVal = false;
+        if (this.prefixLen > 0) {
+            this.prefixLen--;
+            retVal = true;
+        }
+        return retVal;
     }
 
     @Override
     protected Pathway getPath(String target) {
-        Pathway retVal = this.getModel().extendPathway(this.current, target);
+        Pathway retVal = this.extendPathway(this.current, target);
         this.current = retVal;
         return retVal;
     }
 
+    @Override
+    protected void finishUpdate() throws IOException {
+        if (this.fingerprint != null)
+            writeManifest(new File(this.getSubsysDir(), MANIFEST_NAME), this.fingerprint, this.compoundIds);
+    }
+
+    /**
+     * Write the compound list to a manifest file.
+     *
+     * @param manifestFile		manifest file to write
+     * @param fingerprint		flow fingerprint for the build
+     * @param compoundIds		compounds in the build, in order
+     *
+     * @throws IOException
+     */
+    static void writeManifest(File manifestFile, String fingerprint, List<String> compoundIds) throws IOException {
+        List<String> lines = new ArrayList<String>(compoundIds.size() + 1);
+        lines.add(fingerprint);
+        lines.addAll(compoundIds);
+        Files.write(manifestFile.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
 }
@@ -5,9 +5,25 @@ package org.theseed.meta.finders;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.theseed.basic.ParseFailureException;
 import org.theseed.meta.jfx.IModelManager;
+import org.theseed.meta.jfx.InterruptException;
+import org.theseed.meta.storage.SubsystemArchive;
+import org.theseed.metabolism.MetaModel;
 import org.theseed.metabolism.Pathway;
 
 import com.github.cliftonlabs.json_simple.JsonException;
@@ -18,6 +34,22 @@ import javafx.concurrent.Task;
  * This class manages a subsystem update.  There are two types of updates, depending on
  * whether we are starting from a compound or a path.
  *
+ * If the builder declares that its targets are independent of each other, the pathways are
+ * generated in parallel, and each one is written as soon as it is finished.  The searches in the
+ * model are serialized on the model's lock, so the parallelism mostly overlaps the writes with
+ * the searches.
+ *
+ * The pathways are not written directly into the subsystem.  Instead, they are written to a staging
+ * directory inside it, and only when all of them have been generated are they published.  If the build
+ * fails or is aborted, the staging directory is deleted and the subsystem is left as it was.  Before the
+ * staging directory is deleted, the build is marked as cancelled, so that a worker still finishing a search
+ * cannot write into a later build's staging directory.
+ *
+ * A subsystem that is a directory of pathway files stays one:  each staged pathway is renamed over its
+ * target, and the other pathway files are left alone.  For an archived subsystem, the staged pathways are
+ * merged with the ones already in the archive into a new archive, and the new archive replaces the old one
+ * in a single atomic rename, so readers see either all of the new pathways or none of them.
+ *
  * @author Bruce Parrello
  *
  */
@@ -26,6 +58,26 @@ public abstract class SubsystemBuilder extends CompoundListAction {
     // FIELDS
     /** subsystem directory */
     private File subDir;
+    /** staging directory for the pathways being built */
+    private File stageDir;
+    /** number of bytes written to the staging directory */
+    private AtomicLong bytesWritten;
+    /** number of nanoseconds spent writing to the staging directory */
+    private AtomicLong writeNanos;
+    /** map of staged file names to pathways */
+    private Map<String, Pathway> stagedPaths;
+    /** existing subsystem archive, or NULL if it has not been opened */
+    private SubsystemArchive archive;
+    /** TRUE if the staging directory is being discarded, so no more pathways may be written to it */
+    private boolean cancelled;
+    /** lock protecting the cancellation flag and the writes to the staging directory */
+    private final Object stageLock = new Object();
+    /** name of the staging directory in the subsystem directory */
+    public static final String STAGING_NAME = ".staging";
+    /** number of milliseconds to wait between progress checks */
+    private static final long POLL_INTERVAL = 100;
+    /** number of seconds to wait for the workers to stop after an abort */
+    private static final long STOP_WAIT = 30;
 
     /**
      * This interface defines the parameters needed by the subsystem builders.
@@ -86,6 +138,10 @@ public abstract class SubsystemBuilder extends CompoundListAction {
     public SubsystemBuilder(IParms processor) throws IOException, JsonException, ParseFailureException {
         super(processor);
         this.subDir = processor.getSubsysDirectory();
+        this.bytesWritten = new AtomicLong();
+        this.writeNanos = new AtomicLong();
+        this.stagedPaths = new ConcurrentHashMap<String, Pathway>();
+        this.archive = null;
     }
 
     /**
@@ -98,26 +154,292 @@ public abstract class SubsystemBuilder extends CompoundListAction {
     public boolean updateSubsystem() throws IOException {
         boolean retVal = false;
         if (this.subDir != null) {
-            // Here we have a subsystem to update.
-            int count = 0;
-            // Loop through the remaining compounds, generating pathways.
-            while (this.hasNextCompound()) {
-                String target = this.nextCompound();
-                Pathway path = this.getPath(target);
-                if (path == null)
-                    throw new IOException("Could not create a path for " + target + ".");
-                // Store the path in the subsystem.
-                File outFile = new File(this.subDir, target + Pathway.FILE_EXT);
-                path.save(outFile);
-                this.showStatus("Pathway saved to " + outFile.getName() + ".");
-                count++;
+            // Here we have a subsystem to update.  Set up the staging directory.
+            this.stageDir = new File(this.subDir, STAGING_NAME);
+            deleteStaging(this.stageDir);
+            if (! this.stageDir.mkdir())
+                throw new IOException("Could not create staging directory in " + this.subDir + ".");
+            this.bytesWritten.set(0);
+            this.writeNanos.set(0);
+            this.stagedPaths.clear();
+            this.cancelled = false;
+            int count;
+            int kept = 0;
+            try {
+                if (this.isOrderIndependent() && this.getNumLeft() > 1)
+                    count = this.updateParallel();
+                else {
+                    count = 0;
+                    // Loop through the remaining compounds, generating pathways.  Pathways that are
+                    // already up to date are left alone.
+                    while (this.hasNextCompound()) {
+                        String target = this.nextCompound();
+                        if (this.isUnchanged(target))
+                            kept++;
+                        else {
+                            this.savePath(target);
+                            count++;
+                        }
+                    }
+                }
+                // Everything worked, so we can publish the pathways.
+                this.publish();
+            } finally {
+                synchronized (this.stageLock) {
+                    this.cancelled = true;
+                }
+                deleteStaging(this.stageDir);
             }
-            this.showStatus(String.format("%d pathways updated in %s.", count, this.subDir));
+            this.finishUpdate();
+            // The rate is based only on the time spent writing, not on the searches.
+            double seconds = Math.max(this.writeNanos.get(), 1000000L) / 1e9;
+            double kb = this.bytesWritten.get() / 1024.0;
+            String rate = String.format("%1.1f KB written at %1.1f KB/s", kb, kb / seconds);
+            if (kept > 0)
+                this.showStatus(String.format("%d pathways updated and %d unchanged in %s (%s).", count, kept,
+                        this.subDir, rate));
+            else
+                this.showStatus(String.format("%d pathways updated in %s (%s).", count, this.subDir, rate));
             retVal = true;
         }
         return retVal;
     }
 
+    /**
+     * Generate the pathways for the remaining compounds in parallel.  Progress is shown from the
+     * calling thread, so an abort request will stop the build.
+     *
+     * @return the number of pathways saved
+     *
+     * @throws IOException
+     */
+    private int updateParallel() throws IOException {
+        List<String> targets = new ArrayList<String>(this.getNumLeft());
+        while (this.hasNextCompound())
+            targets.add(this.nextCompound());
+        final int nTargets = targets.size();
+        final int nThreads = Math.min(nTargets, Runtime.getRuntime().availableProcessors());
+        this.showStatus("Computing " + nTargets + " subsystem pathways using " + nThreads + " threads.");
+        ExecutorService workers = Executors.newFixedThreadPool(nThreads, r -> {
+            Thread retVal = new Thread(r, "SubsystemBuilder");
+            retVal.setDaemon(true);
+            return retVal;
+        });
+        int retVal = 0;
+        try {
+            CompletionService<String> tasks = new ExecutorCompletionService<String>(workers);
+            for (String target : targets)
+                tasks.submit(() -> this.savePath(target));
+            while (retVal < nTargets) {
+                Future<String> result = tasks.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    String fileName = result.get();
+                    retVal++;
+                    this.showStatus(String.format("%d of %d pathways saved (last was %s).", retVal, nTargets,
+                            fileName));
+                }
+                this.showProgress((double) retVal / nTargets);
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            else if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else
+                throw new IOException("Error building subsystem pathway: " + cause.toString(), cause);
+        } finally {
+            // If we are aborting, this abandons the remaining targets.  We wait for the workers to stop
+            // so that none is still running when the staging directory is deleted.
+            workers.shutdownNow();
+            try {
+                if (! workers.awaitTermination(STOP_WAIT, TimeUnit.SECONDS))
+                    log.warn("Subsystem builder workers for {} did not stop in {} seconds.", this.subDir, STOP_WAIT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Generate the pathway for a target and store it in the staging directory.  If the build has been
+     * cancelled, nothing is written.
+     *
+     * @param target	target compound for the pathway
+     *
+     * @return the name of the file written
+     *
+     * @throws IOException
+     */
+    private String savePath(String target) throws IOException {
+        Pathway path = this.getPath(target);
+        if (path == null)
+            throw new IOException("Could not create a path for " + target + ".");
+        File outFile = new File(this.stageDir, target + Pathway.FILE_EXT);
+        synchronized (this.stageLock) {
+            if (this.cancelled)
+                throw new InterruptException();
+            long start = System.nanoTime();
+            path.save(outFile);
+            this.writeNanos.addAndGet(System.nanoTime() - start);
+        }
+        this.stagedPaths.put(outFile.getName(), path);
+        this.bytesWritten.addAndGet(outFile.length());
+        this.showStatus("Pathway saved to " + outFile.getName() + ".");
+        return outFile.getName();
+    }
+
+    /**
+     * Publish the staged pathways to the subsystem.  If the subsystem is a directory of pathway files, each
+     * staged file is renamed over its target, so every pathway file is always complete.  If the subsystem
+     * is archived, the staged pathways are merged with the ones already in the archive into a new archive,
+     * and the new archive replaces the old one in a single atomic rename.
+     *
+     * @throws IOException
+     */
+    private void publish() throws IOException {
+        File[] stagedFiles = this.stageDir.listFiles();
+        if (stagedFiles == null)
+            throw new IOException("Could not read staging directory in " + this.subDir + ".");
+        this.showStatus("Publishing " + stagedFiles.length + " pathways to " + this.subDir + ".");
+        if (! SubsystemArchive.exists(this.subDir)) {
+            for (File stagedFile : stagedFiles)
+                SubsystemArchive.moveFile(stagedFile, new File(this.subDir, stagedFile.getName()));
+        } else {
+            SubsystemArchive.Writer writer = new SubsystemArchive.Writer();
+            SubsystemArchive oldArchive = this.getArchive();
+            for (SubsystemArchive.Entry entry : oldArchive.getEntries())
+                writer.add(oldArchive, entry);
+            for (File stagedFile : stagedFiles) {
+                String name = stagedFile.getName();
+                writer.add(name, this.stagedPaths.get(name), Files.readAllBytes(stagedFile.toPath()));
+            }
+            File newArchive = new File(this.stageDir, SubsystemArchive.ARCHIVE_NAME);
+            long start = System.nanoTime();
+            writer.save(newArchive);
+            this.writeNanos.addAndGet(System.nanoTime() - start);
+            this.bytesWritten.addAndGet(newArchive.length());
+            // Release our handle on the old archive so that it can be replaced.
+            oldArchive.close();
+            this.archive = null;
+            SubsystemArchive.moveFile(newArchive, SubsystemArchive.archiveFile(this.subDir));
+        }
+    }
+
+    /**
+     * @return the existing subsystem archive
+     *
+     * @throws IOException
+     */
+    private SubsystemArchive getArchive() throws IOException {
+        if (this.archive == null)
+            this.archive = SubsystemArchive.open(this.subDir);
+        return this.archive;
+    }
+
+    /**
+     * @return TRUE if the subsystem contains a pathway for the specified target that has not been
+     * 		   written since a specified time
+     *
+     * @param target	target compound for the pathway
+     * @param since		time of the last build, in milliseconds
+     */
+    protected boolean isPathCurrent(String target, long since) {
+        boolean retVal;
+        String name = target + Pathway.FILE_EXT;
+        if (SubsystemArchive.exists(this.subDir)) {
+            try {
+                retVal = (this.getArchive().find(name) != null && this.archive.getFile().lastModified() <= since);
+            } catch (IOException e) {
+                log.warn("Could not read subsystem archive in {}: {}", this.subDir, e.toString());
+                retVal = false;
+            }
+        } else {
+            File pathFile = new File(this.subDir, name);
+            retVal = (pathFile.canRead() && pathFile.lastModified() <= since);
+        }
+        return retVal;
+    }
+
+    /**
+     * Load the pathway for a target from the subsystem.
+     *
+     * @param target	target compound for the pathway
+     * @param model		model containing the pathway's reactions
+     *
+     * @return the pathway found
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     * @throws JsonException
+     */
+    protected Pathway loadPath(String target, MetaModel model) throws IOException, ParseFailureException, JsonException {
+        Pathway retVal;
+        String name = target + Pathway.FILE_EXT;
+        if (SubsystemArchive.exists(this.subDir)) {
+            SubsystemArchive.Entry entry = this.getArchive().find(name);
+            if (entry == null)
+                throw new IOException("Pathway for " + target + " is not in the archive for " + this.subDir + ".");
+            retVal = this.archive.load(entry, model);
+        } else synchronized (model) {
+            retVal = new Pathway(new File(this.subDir, name), model);
+        }
+        return retVal;
+    }
+
+    /**
+     * Delete a staging directory and its contents, if it exists.
+     *
+     * @param stageDir	staging directory to delete
+     */
+    private static void deleteStaging(File stageDir) {
+        File[] stagedFiles = stageDir.listFiles();
+        if (stagedFiles != null) {
+            for (File stagedFile : stagedFiles) {
+                if (! stagedFile.delete())
+                    log.warn("Could not delete staged file {}.", stagedFile);
+            }
+        }
+        if (stageDir.exists() && ! stageDir.delete())
+            log.warn("Could not delete staging directory {}.", stageDir);
+    }
+
+    /**
+     * @return TRUE if the pathway already in the subsystem for a target is up to date, so it does not need
+     * 		   to be generated again (only checked when the targets are processed in order)
+     *
+     * @param target	target compound for the pathway
+     */
+    protected boolean isUnchanged(String target) {
+        return false;
+    }
+
+    /**
+     * Perform any bookkeeping needed after all the pathways have been saved.
+     *
+     * @throws IOException
+     */
+    protected void finishUpdate() throws IOException {
+    }
+
+    /**
+     * @return the subsystem directory (can be NULL)
+     */
+    protected File getSubsysDir() {
+        return this.subDir;
+    }
+
+    /**
+     * @return TRUE if the pathway for each target is independent of the others, so that they can be
+     * 		   generated in parallel
+     */
+    protected boolean isOrderIndependent() {
+        return false;
+    }
+
     /**
      * Generate the subsystem pathway for a specified target.
      *
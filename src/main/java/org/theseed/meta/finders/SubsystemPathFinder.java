@@ -4,12 +4,8 @@
 package org.theseed.meta.finders;
 
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import org.theseed.basic.ParseFailureException;
-import org.theseed.metabolism.Pathway;
 
 import com.github.cliftonlabs.json_simple.JsonException;
 
@@ -27,22 +23,9 @@ public class SubsystemPathFinder extends BaseSubsystemFinder {
     }
 
     @Override
-    protected Entry<Pathway, Pathway> findBest(Map<Pathway, Pathway> outputs) {
-        // Find the total path with the shortest length.
-        Iterator<Map.Entry<Pathway, Pathway>> iter = outputs.entrySet().iterator();
-        // We are guaranteed not to be called if the map is empty.
-        var retVal = iter.next();
-        var bestLen = retVal.getKey().size() + retVal.getValue().size();
-        while (iter.hasNext()) {
-            var curr = iter.next();
-            int currLen = curr.getValue().size() + curr.getKey().size();
-            if (currLen < bestLen) {
-                retVal = curr;
-                bestLen = currLen;
-            }
-        }
-        return retVal;
+    protected long scorePaths(int outLen, int subsysLen) {
+        // We want the total path with the shortest length.
+        return outLen + subsysLen;
     }
 
-
 }
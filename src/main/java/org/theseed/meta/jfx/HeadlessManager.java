@@ -0,0 +1,500 @@
+/**
+ *
+ */
+package org.theseed.meta.jfx;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.meta.controllers.MetaCompound;
+import org.theseed.meta.finders.PathBatch;
+import org.theseed.meta.finders.PathFinder;
+import org.theseed.meta.finders.SubsystemBuilder;
+import org.theseed.meta.network.FlowFingerprint;
+import org.theseed.meta.network.FlowScenarios;
+import org.theseed.meta.network.IReactionNetwork;
+import org.theseed.meta.network.PathwayCache;
+import org.theseed.meta.storage.SubsystemArchive;
+import org.theseed.meta.storage.SubsystemPath;
+import org.theseed.meta.storage.SubsystemReader;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.Pathway;
+import org.theseed.metabolism.mods.ModifierList;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+
+/**
+ * This object runs the path finders and subsystem builders from the command line, without the JavaFX
+ * user interface.  It takes the place of the model manager as the controlling command processor, with
+ * all the parameters coming from the command line and all the progress going to the log.  The model
+ * is loaded by the same loader as the GUI uses.
+ *
+ * The first parameter is the command, and the remaining parameters are options followed by positional
+ * parameters.  The commands are
+ *
+ * 	path [options] modelDir outFile compound1 compound2 ...
+ * 	subsys [options] modelDir subsysDir compound1 compound2 ...
+ * 	batch [options] modelDir queryFile outDir
+ * 	pack [options] modelDir subsysDir
+ * 	serve [options] modelDir1 modelDir2 ...
+ *
+ * The "serve" command starts a path-finding service (see PathService) and preloads the specified models.
+ * It runs until the process is terminated.  The "pack" command converts a subsystem directory into a
+ * subsystem archive (see SubsystemArchive).
+ * The options are
+ *
+ * 	--type		path type (for "path") or subsystem builder type (for "subsys")
+ * 	--engine	search engine for path searches (default MODEL)
+ * 	--loop		if specified, the pathway will be looped
+ * 	--flow		flow modifier file to apply to the model
+ * 	--start		starting pathway file
+ * 	--subsys	subsystem directory for subsystem path searches
+ * 	--threads	number of worker threads for a batch or a service (default is the number of processors)
+ * 	--port		port number for a service
+ * 	--models	maximum number of models a service keeps loaded
+ * 	--token		access token for a service (default is a random token, which is logged)
+ * 	--roots		comma-delimited list of directories whose files a service may use (default is the
+ * 				current directory)
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class HeadlessManager implements PathFinder.IParms, SubsystemBuilder.IParms {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(HeadlessManager.class);
+    /** metabolic model */
+    private MetaModel model;
+    /** reaction network for the flow scenario */
+    private IReactionNetwork network;
+    /** pathway search cache */
+    private PathwayCache pathCache;
+    /** map of compound IDs to compound descriptors */
+    private Map<String, MetaCompound> compoundMap;
+    /** list of compounds to process */
+    private List<MetaCompound> compounds;
+    /** option values, keyed by option name */
+    private Map<String, String> options;
+    /** positional parameters */
+    private List<String> positionals;
+    /** starting pathway (or NULL if none) */
+    private Pathway startPath;
+    /** subsystem directory (or NULL if none) */
+    private File subsysDir;
+    /** subsystem pathway descriptors (or NULL if none) */
+    private Collection<SubsystemPath> subsysPaths;
+    /** output file for alternative pathways (or NULL if none) */
+    private File outFile;
+    /** last progress fraction logged */
+    private double lastProgress;
+    /** time of the last progress message logged */
+    private long lastProgressTime;
+    /** minimum number of milliseconds between progress messages */
+    private static final long PROGRESS_INTERVAL = 5000;
+    /** options that take no value */
+    private static final List<String> FLAG_OPTIONS = List.of("loop");
+
+    /**
+     * This enumeration describes the headless commands.
+     */
+    public static enum Command {
+        /** find a single pathway */
+        PATH {
+            @Override
+            public boolean execute(HeadlessManager processor) throws IOException, ParseFailureException, JsonException {
+                processor.outFile = new File(processor.positionals.get(1));
+                processor.setCompounds(2);
+                PathFinder.Type type = PathFinder.Type.valueOf(processor.getOption("type", "NORMAL").toUpperCase());
+                PathFinder finder = type.create(processor);
+                boolean retVal = false;
+                String impossible = finder.findImpossibleLeg();
+                if (impossible != null)
+                    log.error(impossible);
+                else {
+                    Pathway path = finder.computePath();
+                    if (path == null)
+                        log.error("Could not find requested pathway.");
+                    else {
+                        path.save(processor.outFile);
+                        log.info("Pathway with {} reactions saved to {}.", path.size(), processor.outFile);
+                        retVal = true;
+                    }
+                }
+                return retVal;
+            }
+
+            @Override
+            protected int minPositionals() {
+                return 4;
+            }
+        },
+        /** update a subsystem */
+        SUBSYS {
+            @Override
+            public boolean execute(HeadlessManager processor) throws IOException, ParseFailureException, JsonException {
+                processor.subsysDir = new File(processor.positionals.get(1));
+                if (! processor.subsysDir.isDirectory() && ! processor.subsysDir.mkdirs())
+                    throw new IOException("Could not create subsystem directory " + processor.subsysDir + ".");
+                processor.setCompounds(2);
+                SubsystemBuilder.Type type = SubsystemBuilder.Type.valueOf(processor.getOption("type", "SIMPLE").toUpperCase());
+                SubsystemBuilder builder = type.create(processor);
+                return builder.updateSubsystem();
+            }
+
+            @Override
+            protected int minPositionals() {
+                return 3;
+            }
+        },
+        /** run a batch of path queries */
+        BATCH {
+            @Override
+            public boolean execute(HeadlessManager processor) throws IOException, ParseFailureException, JsonException {
+                File queryFile = new File(processor.positionals.get(1));
+                File outDir = new File(processor.positionals.get(2));
+                int nThreads = Integer.parseInt(processor.getOption("threads",
+                        Integer.toString(Runtime.getRuntime().availableProcessors())));
+                PathBatch batch = new PathBatch(processor, queryFile, outDir, nThreads);
+                batch.run();
+                return true;
+            }
+
+            @Override
+            protected int minPositionals() {
+                return 3;
+            }
+        },
+        /** pack a subsystem directory into a subsystem archive */
+        PACK {
+            @Override
+            public boolean execute(HeadlessManager processor) throws IOException, ParseFailureException, JsonException {
+                File subDir = new File(processor.positionals.get(1));
+                SubsystemArchive.pack(subDir, processor.model);
+                return true;
+            }
+
+            @Override
+            protected int minPositionals() {
+                return 2;
+            }
+        },
+        /** run a path-finding service */
+        SERVE {
+            @Override
+            public boolean execute(HeadlessManager processor) throws IOException, ParseFailureException, JsonException {
+                int port = Integer.parseInt(processor.getOption("port", Integer.toString(PathService.DEFAULT_PORT)));
+                int nThreads = Integer.parseInt(processor.getOption("threads",
+                        Integer.toString(Runtime.getRuntime().availableProcessors())));
+                int maxModels = Integer.parseInt(processor.getOption("models",
+                        Integer.toString(PathService.DEFAULT_MODELS)));
+                String token = processor.getOption("token", null);
+                if (token == null) {
+                    token = PathService.newToken();
+                    log.info("Path service access token is {}.", token);
+                }
+                String rootNames = processor.getOption("roots", ".");
+                List<File> roots = Arrays.stream(rootNames.split(",")).map(x -> new File(x.trim()))
+                        .collect(Collectors.toList());
+                PathService service = new PathService(maxModels, token, roots);
+                for (String modelName : processor.positionals)
+                    service.preload(new File(modelName));
+                service.serve(port, nThreads);
+                return true;
+            }
+
+            @Override
+            protected int minPositionals() {
+                return 0;
+            }
+
+            @Override
+            protected boolean usesModel() {
+                return false;
+            }
+        };
+
+        /**
+         * Execute this command.
+         *
+         * @param processor		headless processor containing the parameters and the model
+         *
+         * @return TRUE if successful, else FALSE
+         *
+         * @throws IOException
+         * @throws ParseFailureException
+         * @throws JsonException
+         */
+        public abstract boolean execute(HeadlessManager processor)
+                throws IOException, ParseFailureException, JsonException;
+
+        /**
+         * @return the minimum number of positional parameters for this command
+         */
+        protected abstract int minPositionals();
+
+        /**
+         * @return TRUE if this command needs the model from the first positional parameter
+         */
+        protected boolean usesModel() {
+            return true;
+        }
+
+    }
+
+    /**
+     * @return the headless command with the specified name, or NULL if there is none
+     *
+     * @param name		command name to check
+     */
+    public static Command findCommand(String name) {
+        Command retVal = null;
+        for (Command command : Command.values()) {
+            if (command.name().equalsIgnoreCase(name))
+                retVal = command;
+        }
+        return retVal;
+    }
+
+    /**
+     * Run a headless command.
+     *
+     * @param args		command-line parameters, beginning with the command name
+     *
+     * @return the exit code for the program
+     */
+    public static int run(String[] args) {
+        int retVal = 1;
+        long start = System.currentTimeMillis();
+        try {
+            Command command = findCommand(args[0]);
+            HeadlessManager processor = new HeadlessManager(args);
+            if (processor.positionals.size() < command.minPositionals())
+                throw new ParseFailureException("Too few parameters for the " + args[0] + " command.");
+            if (command.usesModel())
+                processor.setup();
+            if (command.execute(processor))
+                retVal = 0;
+        } catch (Exception e) {
+            log.error("Error in {} command: {}", args[0], e.toString());
+        }
+        log.info("{} command finished in {} ms.", args[0], System.currentTimeMillis() - start);
+        return retVal;
+    }
+
+    /**
+     * Parse the command-line parameters.
+     *
+     * @param args		command-line parameters, beginning with the command name
+     *
+     * @throws ParseFailureException
+     */
+    private HeadlessManager(String[] args) throws ParseFailureException {
+        this.options = new HashMap<String, String>();
+        this.positionals = new ArrayList<String>();
+        int i = 1;
+        while (i < args.length && args[i].startsWith("--")) {
+            String name = args[i].substring(2);
+            i++;
+            if (FLAG_OPTIONS.contains(name))
+                this.options.put(name, "Y");
+            else if (i >= args.length)
+                throw new ParseFailureException("Missing value for option --" + name + ".");
+            else {
+                this.options.put(name, args[i]);
+                i++;
+            }
+        }
+        while (i < args.length) {
+            this.positionals.add(args[i]);
+            i++;
+        }
+        this.compounds = Collections.emptyList();
+        this.lastProgress = 0.0;
+        this.lastProgressTime = 0;
+    }
+
+    /**
+     * Load the model and apply the flow modifiers, then load the starting pathway and subsystem, if any.
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     * @throws JsonException
+     */
+    private void setup() throws IOException, ParseFailureException, JsonException {
+        File modelDir = new File(this.positionals.get(0));
+        if (! ModelLoader.isModelDir(modelDir))
+            throw new IOException(modelDir + " does not have a base.gto and a model.json.");
+        ModelLoader loader = new ModelLoader(modelDir, this);
+        this.model = loader.load();
+        FlowScenarios scenarios = loader.getScenarios();
+        this.compoundMap = new HashMap<String, MetaCompound>(500);
+        for (String id : this.model.getMetaboliteMap().keySet())
+            this.compoundMap.put(id, new MetaCompound(id, this.model.getCompoundName(id)));
+        // Apply the flow modifiers.
+        this.network = scenarios.getBase();
+        String flowName = this.options.get("flow");
+        if (flowName != null) {
+            ModifierList flowMods = new ModifierList(new File(flowName));
+            flowMods.apply(this.model);
+            this.model.buildReactionNetwork();
+            this.network = scenarios.getCurrent(FlowFingerprint.of(flowMods));
+            log.info("Flow modifiers applied from {}.", flowName);
+        }
+        this.pathCache = new PathwayCache(PathwayCache.DEFAULT_SIZE);
+        this.pathCache.setFingerprint(this.network.getFingerprint());
+        // Load the optional pathways.
+        String startName = this.options.get("start");
+        if (startName != null)
+            this.startPath = new Pathway(new File(startName), this.model);
+        String subsysName = this.options.get("subsys");
+        if (subsysName != null)
+            this.subsysPaths = loadSubsys(new File(subsysName), this.model);
+    }
+
+    /**
+     * Load a subsystem's pathway descriptors.
+     *
+     * @param subDir	directory containing the subsystem's pathways
+     * @param model		model containing the pathways' reactions
+     *
+     * @return the descriptors for the pathways in the subsystem, sorted from shortest to longest
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     * @throws JsonException
+     */
+    protected static List<SubsystemPath> loadSubsys(File subDir, MetaModel model)
+            throws IOException, ParseFailureException, JsonException {
+        SubsystemReader reader = new SubsystemReader(subDir);
+        return reader.readAll(model);
+    }
+
+    /**
+     * Store the compounds to process.
+     *
+     * @param first		index of the first positional parameter containing a compound ID
+     *
+     * @throws ParseFailureException
+     */
+    private void setCompounds(int first) throws ParseFailureException {
+        this.compounds = new ArrayList<MetaCompound>(this.positionals.size() - first);
+        for (int i = first; i < this.positionals.size(); i++) {
+            String id = this.positionals.get(i);
+            MetaCompound compound = this.compoundMap.get(id);
+            if (compound == null)
+                throw new ParseFailureException("Compound " + id + " is not in the model.");
+            this.compounds.add(compound);
+        }
+    }
+
+    /**
+     * @return the value of an option
+     *
+     * @param name		name of the option
+     * @param defValue	value to return if the option was not specified
+     */
+    private String getOption(String name, String defValue) {
+        return this.options.getOrDefault(name, defValue);
+    }
+
+    @Override
+    public List<MetaCompound> getCompounds() {
+        return this.compounds;
+    }
+
+    @Override
+    public MetaModel getModel() {
+        return this.model;
+    }
+
+    @Override
+    public IReactionNetwork getNetwork() {
+        return this.network;
+    }
+
+    @Override
+    public PathwayCache getPathCache() {
+        return this.pathCache;
+    }
+
+    @Override
+    public Pathway getStartPathway() {
+        return this.startPath;
+    }
+
+    @Override
+    public Collection<SubsystemPath> getSubsysPathways() {
+        return this.subsysPaths;
+    }
+
+    @Override
+    public File getSubsysDirectory() {
+        return this.subsysDir;
+    }
+
+    @Override
+    public boolean getLoopFlag() {
+        return this.options.containsKey("loop");
+    }
+
+    @Override
+    public PathFinder.Engine getEngine() {
+        return PathFinder.Engine.valueOf(this.getOption("engine", "MODEL").toUpperCase());
+    }
+
+    /**
+     * The shortest alternative is saved as the main result, so only the others are saved here.
+     */
+    @Override
+    public void showAlternative(Pathway path, int rank) {
+        if (rank > 1 && this.outFile != null) {
+            String baseName = this.outFile.getName();
+            if (baseName.endsWith(Pathway.FILE_EXT))
+                baseName = baseName.substring(0, baseName.length() - Pathway.FILE_EXT.length());
+            File altFile = new File(this.outFile.getAbsoluteFile().getParentFile(), baseName + "." + rank
+                    + Pathway.FILE_EXT);
+            try {
+                path.save(altFile);
+                log.info("Alternative pathway {} with {} reactions saved to {}.", rank, path.size(), altFile);
+            } catch (IOException e) {
+                log.error("Error saving alternative pathway {}: {}", rank, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Progress is logged only when it has moved substantially or some time has passed, since the
+     * finders report it very frequently.
+     */
+    @Override
+    public synchronized void showProgress(double p) {
+        long now = System.currentTimeMillis();
+        if (p >= 1.0 || p - this.lastProgress >= 0.1 || now - this.lastProgressTime >= PROGRESS_INTERVAL) {
+            log.info("Progress: {}% complete.", Math.round(p * 100.0));
+            this.lastProgress = p;
+            this.lastProgressTime = now;
+        }
+    }
+
+    @Override
+    public void showStatus(String msg) {
+        log.info("Status: {}", msg);
+    }
+
+    @Override
+    public void showCompleted() {
+    }
+
+}
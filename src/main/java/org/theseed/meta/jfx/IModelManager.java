@@ -7,6 +7,9 @@ import java.util.Collection;
 import java.util.List;
 
 import org.theseed.meta.controllers.MetaCompound;
+import org.theseed.meta.network.IReactionNetwork;
+import org.theseed.meta.network.PathwayCache;
+import org.theseed.meta.storage.SubsystemPath;
 import org.theseed.metabolism.MetaModel;
 import org.theseed.metabolism.Pathway;
 import org.theseed.shared.meta.IProgressReporter;
@@ -30,15 +33,25 @@ public interface IModelManager extends IProgressReporter {
      */
     public MetaModel getModel();
 
+    /**
+     * @return the reaction network for the current flow scenario (can be NULL)
+     */
+    public IReactionNetwork getNetwork();
+
+    /**
+     * @return the pathway search cache for the current model (can be NULL)
+     */
+    public PathwayCache getPathCache();
+
     /**
      * @return the single starting pathway (can be NULL)
      */
     public Pathway getStartPathway();
 
     /**
-     * @return the collection of subsystem pathways (can be NULL)
+     * @return the collection of subsystem pathway descriptors (can be NULL)
      */
-    public Collection<Pathway> getSubsysPathways();
+    public Collection<SubsystemPath> getSubsysPathways();
 
 
 }
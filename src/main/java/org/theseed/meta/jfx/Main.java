@@ -3,6 +3,8 @@
  */
 package org.theseed.meta.jfx;
 
+import java.util.Arrays;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,19 +15,32 @@ import ch.qos.logback.classic.LoggerContext;
  * This is the main class.  In order to run under Maven, we cannot have a main class that
  * derives from Application.
  *
+ * If the first parameter (after the optional "-v") is a headless command, the command is run
+ * without the user interface.  Headless commands always log their progress.
+ *
  * @author Bruce Parrello
  *
  */
 public class Main {
 
     public static void main(String[] args) {
+        // Check for verbose mode.
+        boolean verbose = (args.length >= 1 && args[0].contentEquals("-v"));
+        int argStart = (verbose ? 1 : 0);
+        boolean headless = (args.length > argStart && HeadlessManager.findCommand(args[argStart]) != null);
         // Configure logging.
         Level logLevel = Level.ERROR;
-        if (args.length >= 1 && args[0].contentEquals("-v")) logLevel = Level.INFO;
+        if (verbose || headless) logLevel = Level.INFO;
         LoggerContext logging = (LoggerContext) LoggerFactory.getILoggerFactory();
         logging.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(logLevel);
-        // Launch the application.
-        App.main(args);
+        if (headless) {
+            // Run the command without the user interface.
+            int exitCode = HeadlessManager.run(Arrays.copyOfRange(args, argStart, args.length));
+            System.exit(exitCode);
+        } else {
+            // Launch the application.
+            App.main(args);
+        }
     }
 
 }
@@ -0,0 +1,251 @@
+/**
+ *
+ */
+package org.theseed.meta.jfx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.genome.Genome;
+import org.theseed.meta.network.FlowScenarios;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.shared.meta.IProgressReporter;
+
+import javafx.concurrent.Task;
+
+/**
+ * This object loads a metabolic model from a model directory.  The model directory must contain
+ * a "base.gto" genome file and a "model.json" model file.  The load is performed by worker
+ * threads, so that it can be run in the background while the controlling reporter displays
+ * progress.  The reporter's progress method is polled while we wait, so a reporter that throws
+ * an InterruptException will abort the load.
+ *
+ * The model cannot be built until the genome has been parsed, so while the genome is being parsed
+ * the second worker reads the model file through once to get it into the file system cache.
+ * Finally, the model's base reaction network is captured so that flow scenarios can be held as
+ * overlays on it.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ModelLoader {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(ModelLoader.class);
+    /** model directory being loaded */
+    private File modelDir;
+    /** controlling progress reporter */
+    private IProgressReporter reporter;
+    /** model loaded (or NULL if the load has not completed) */
+    private MetaModel model;
+    /** flow scenario networks for the model (or NULL if the load has not completed) */
+    private FlowScenarios scenarios;
+    /** name of the model file in a model directory */
+    public static final String MODEL_FILE_NAME = "model.json";
+    /** name of the genome file in a model directory */
+    public static final String GENOME_FILE_NAME = "base.gto";
+    /** number of milliseconds to wait between progress polls */
+    private static final long POLL_INTERVAL = 100;
+    /** size of the buffer for pre-reading the model file */
+    private static final int READ_BUFFER_SIZE = 65536;
+
+    /**
+     * Construct a model loader for a specified model directory.
+     *
+     * @param modelDir		model directory to load
+     * @param reporter		progress reporter for the load
+     */
+    public ModelLoader(File modelDir, IProgressReporter reporter) {
+        this.modelDir = modelDir;
+        this.reporter = reporter;
+        this.model = null;
+        this.scenarios = null;
+    }
+
+    /**
+     * @return TRUE if the specified directory has the files required for a metabolic model
+     *
+     * @param dir		directory to check
+     */
+    public static boolean isModelDir(File dir) {
+        boolean retVal = false;
+        if (dir != null) {
+            File modelFile = new File(dir, MODEL_FILE_NAME);
+            File genomeFile = new File(dir, GENOME_FILE_NAME);
+            retVal = modelFile.canRead() && genomeFile.canRead();
+        }
+        return retVal;
+    }
+
+    /**
+     * Load the model.  The genome is parsed on one worker while the model file is pre-read on the
+     * other, and then the model itself is built from the model file and the genome.
+     *
+     * @return the model loaded
+     *
+     * @throws IOException
+     */
+    public MetaModel load() throws IOException {
+        File modelFile = new File(this.modelDir, MODEL_FILE_NAME);
+        File genomeFile = new File(this.modelDir, GENOME_FILE_NAME);
+        ExecutorService workers = Executors.newFixedThreadPool(2, r -> {
+            Thread retVal = new Thread(r, "ModelLoader");
+            retVal.setDaemon(true);
+            return retVal;
+        });
+        try {
+            this.reporter.showStatus("Loading genome and model files from " + this.modelDir + ".");
+            this.reporter.showProgress(0.0);
+            long start = System.currentTimeMillis();
+            Future<Genome> genomeTask = workers.submit(() -> new Genome(genomeFile));
+            Future<Long> prereadTask = workers.submit(() -> preread(modelFile));
+            Genome baseGenome = this.await(genomeTask, 0.0, 0.4);
+            log.info("Genome {} loaded from {} in {} ms.", baseGenome, genomeFile,
+                    System.currentTimeMillis() - start);
+            // The pre-read is only an optimization, so we don't need to wait for it.
+            prereadTask.cancel(true);
+            this.reporter.showStatus("Building model from " + modelFile + ".");
+            Future<MetaModel> modelTask = workers.submit(() -> new MetaModel(modelFile, baseGenome));
+            this.model = this.await(modelTask, 0.4, 0.9);
+            log.info("Model {} loaded in {} ms.", this.model, System.currentTimeMillis() - start);
+            this.reporter.showStatus("Capturing reaction network for " + this.model + ".");
+            MetaModel newModel = this.model;
+            Future<FlowScenarios> networkTask = workers.submit(() -> new FlowScenarios(newModel));
+            this.scenarios = this.await(networkTask, 0.9, 0.95);
+            this.reporter.showProgress(1.0);
+        } finally {
+            // If we are aborting, this will abandon the workers.  Their threads are daemons, so
+            // they will not hold up the application.
+            workers.shutdownNow();
+        }
+        return this.model;
+    }
+
+    /**
+     * Wait for a worker to finish.  While we wait, the progress bar is advanced slowly through the
+     * specified range, and each update gives the reporter a chance to abort the load.
+     *
+     * @param <T>		type of result produced by the worker
+     * @param task		future for the worker's result
+     * @param low		progress fraction at the start of the wait
+     * @param high		progress fraction that should never be reached during the wait
+     *
+     * @return the worker's result
+     *
+     * @throws IOException
+     */
+    private <T> T await(Future<T> task, double low, double high) throws IOException {
+        T retVal = null;
+        double progress = low;
+        boolean done = false;
+        try {
+            while (! done) {
+                try {
+                    retVal = task.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    done = true;
+                } catch (TimeoutException e) {
+                    // Move a little closer to the limit.  We never know how long a parse will take, so
+                    // this insures the bar keeps moving without ever filling.
+                    progress += (high - progress) / 20.0;
+                    this.reporter.showProgress(progress);
+                }
+            }
+        } catch (InterruptException e) {
+            task.cancel(true);
+            throw e;
+        } catch (InterruptedException | CancellationException e) {
+            throw new InterruptException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            else if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else
+                throw new IOException("Error loading model: " + cause.toString(), cause);
+        }
+        return retVal;
+    }
+
+    /**
+     * Read through a file so that it is in the file system cache when it is needed.
+     *
+     * @param inFile	file to read
+     *
+     * @return the number of bytes read
+     *
+     * @throws IOException
+     */
+    private static long preread(File inFile) throws IOException {
+        long retVal = 0;
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        try (InputStream inStream = new FileInputStream(inFile)) {
+            int n = inStream.read(buffer);
+            while (n >= 0 && ! Thread.currentThread().isInterrupted()) {
+                retVal += n;
+                n = inStream.read(buffer);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the flow scenario networks for the model (or NULL if the load has not completed)
+     */
+    public FlowScenarios getScenarios() {
+        return this.scenarios;
+    }
+
+    /**
+     * @return the model directory being loaded
+     */
+    public File getModelDir() {
+        return this.modelDir;
+    }
+
+    /**
+     * This object runs the model load in the background.  Note that the status message should not be
+     * overridden after it is done, since it may contain error information.
+     */
+    public class Runner extends Task<Boolean> {
+
+        /** model loaded, or NULL if the load failed */
+        private MetaModel result;
+
+        @Override
+        protected Boolean call() throws Exception {
+            boolean retVal = false;
+            try {
+                this.result = ModelLoader.this.load();
+                retVal = true;
+            } catch (Exception e) {
+                ModelLoader.this.reporter.showStatus("Error: " + e.toString());
+                this.result = null;
+            }
+            // Denote this task is done.  To avoid a race condition, we save the result immediately.
+            ModelLoader.this.reporter.showCompleted();
+            return retVal;
+        }
+
+        /**
+         * @return the model loaded, or NULL if the load failed
+         */
+        public MetaModel getResult() {
+            return this.result;
+        }
+
+    }
+
+}
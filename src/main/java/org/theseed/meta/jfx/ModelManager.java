@@ -8,28 +8,38 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.theseed.basic.ParseFailureException;
-import org.theseed.genome.Genome;
 import org.theseed.jfx.BaseController;
 import org.theseed.jfx.ResizableController;
+import org.theseed.meta.controllers.CompoundIndex;
 import org.theseed.meta.controllers.CompoundList;
 import org.theseed.meta.controllers.ICompoundFinder;
 import org.theseed.meta.controllers.MetaCompound;
 import org.theseed.meta.controllers.ModifierTable;
 import org.theseed.meta.controllers.ObservableModifier;
 import org.theseed.meta.finders.IEndHandler;
+import org.theseed.meta.finders.PathBatch;
 import org.theseed.meta.finders.PathFinder;
 import org.theseed.meta.finders.SubsystemBuilder;
+import org.theseed.meta.network.FlowFingerprint;
+import org.theseed.meta.network.FlowScenarios;
+import org.theseed.meta.network.IReactionNetwork;
+import org.theseed.meta.network.PathwayCache;
+import org.theseed.meta.storage.SubsystemPath;
 import org.theseed.metabolism.MetaModel;
 import org.theseed.metabolism.Pathway;
 import org.theseed.metabolism.mods.ModifierList;
@@ -72,6 +82,14 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     protected static Logger log = LoggerFactory.getLogger(ModelManager.class);
     /** metabolic model to process */
     private MetaModel model;
+    /** fingerprint of the flow modifiers last applied to the model (or NULL if none applied) */
+    private String flowFingerprint;
+    /** reaction networks for the flow scenarios applied to the current model */
+    private FlowScenarios scenarios;
+    /** reaction network for the current flow scenario */
+    private IReactionNetwork network;
+    /** pathway search cache for the current model */
+    private PathwayCache pathCache;
     /** current model directory */
     private File modelDir;
     /** current flow file */
@@ -80,6 +98,8 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     private File subsysDir;
     /** current loaded path */
     private Pathway savedPath;
+    /** window displaying the alternative pathways of the current search, or NULL if none */
+    private PathDisplay alternativeViewer;
     /** TRUE if the background task should stop */
     private boolean stopFlag;
     /** handler to run when the background task is complete */
@@ -88,6 +108,16 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     private ObservableList<MetaCompound> availableCompounds;
     /** map of compound IDs to compound descriptors */
     private Map<String, MetaCompound> metaCompoundMap;
+    /** search index for the compound descriptors */
+    private CompoundIndex compoundIndex;
+    /** executor for background compound searches */
+    private ScheduledExecutorService searchExecutor;
+    /** current compound search generation */
+    private final AtomicLong searchGeneration = new AtomicLong();
+    /** most recently scheduled compound search (or NULL if none) */
+    private ScheduledFuture<?> pendingSearch;
+    /** number of milliseconds to wait after a keystroke before searching */
+    private static final long SEARCH_DELAY = 150;
     /** controller for compound search list */
     protected CompoundList searchListController;
     /** controller for modifier list */
@@ -97,6 +127,9 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     /** extension filter for flow files */
     public static final FileChooser.ExtensionFilter FLOW_FILES =
             new FileChooser.ExtensionFilter("Flow Command Files", "*.flow");
+    /** extension filter for path query files */
+    public static final FileChooser.ExtensionFilter QUERY_FILES =
+            new FileChooser.ExtensionFilter("Path Query Files", "*.tbl", "*.tsv", "*.txt");
     public static final FileChooser.ExtensionFilter EXCEL_FILES =
             new FileChooser.ExtensionFilter("Excel Spreadsheet", "*.xlsx");
     /** extension filter for all files */
@@ -158,6 +191,10 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     @FXML
     private Button btnComputePath;
 
+    /** run-batch button */
+    @FXML
+    private Button btnRunBatch;
+
     /** select-path button */
     @FXML
     private Button btnSelectPath;
@@ -174,6 +211,10 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     @FXML
     private CheckBox chkLooped;
 
+    /** search engine selector */
+    @FXML
+    private ChoiceBox<PathFinder.Engine> cmbEngine;
+
     /** select-subsystem button */
     @FXML
     private Button btnSelectSubsys;
@@ -192,7 +233,7 @@ public class ModelManager extends ResizableController implements ICompoundFinder
 
     /** current subsystem list */
     @FXML
-    private ListView<Pathway> lstSubsystem;
+    private ListView<SubsystemPath> lstSubsystem;
 
     /** load-subsystem-outputs button */
     @FXML
@@ -220,13 +261,28 @@ public class ModelManager extends ResizableController implements ICompoundFinder
 
     /**
      * This listener updates the compound list based on the content of the text property in the
-     * search box.
+     * search box.  The search is run in the background after a short delay, so that a fast typist
+     * only causes one search.  Each keystroke starts a new search generation, and the results of
+     * a search are discarded if a newer keystroke has arrived by the time they are ready.
      **/
     public class SearchListener implements ChangeListener<String> {
 
         @Override
         public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
-            ModelManager.this.filterList(newValue);
+            final long generation = ModelManager.this.newSearchGeneration();
+            final CompoundIndex index = ModelManager.this.compoundIndex;
+            ModelManager.this.pendingSearch = ModelManager.this.searchExecutor.schedule(() -> {
+                if (ModelManager.this.isSearchCurrent(generation)) {
+                    List<MetaCompound> filtered = index.search(newValue);
+                    if (ModelManager.this.isSearchCurrent(generation)) {
+                        Platform.runLater(() -> {
+                            // Only publish if nothing newer has happened in the meantime.
+                            if (ModelManager.this.isSearchCurrent(generation) && index == ModelManager.this.compoundIndex)
+                                ModelManager.this.searchListController.replaceAll(filtered);
+                        });
+                    }
+                }
+            }, SEARCH_DELAY, TimeUnit.MILLISECONDS);
         }
 
     }
@@ -259,7 +315,12 @@ public class ModelManager extends ResizableController implements ICompoundFinder
             newDir = new File(dirName);
         else
             newDir = new File(System.getProperty("user.dir"));
-        // Set up a change listener on the text field.
+        // Set up the background search thread and a change listener on the text field.
+        this.searchExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread retVal = new Thread(r, "CompoundSearch");
+            retVal.setDaemon(true);
+            return retVal;
+        });
         this.txtSearchCompound.textProperty().addListener(this.new SearchListener());
         // Create controllers for the compound lists.
         this.pathListController = new CompoundList.Droppable(this.lstPath, this);
@@ -268,36 +329,21 @@ public class ModelManager extends ResizableController implements ICompoundFinder
         this.flowModifier = new ModifierTable(this.tblFlowMods);
         // Set up the path styles.
         this.cmbPathStyle.getItems().addAll(PathFinder.Type.values());
+        // Set up the search engines.
+        this.cmbEngine.getItems().addAll(PathFinder.Engine.values());
+        this.cmbEngine.getSelectionModel().clearAndSelect(0);
         // Set up the subsystem methods.
         this.cmbSubsysUpdateType.getItems().addAll(SubsystemBuilder.Type.values());
         this.cmbSubsysUpdateType.getSelectionModel().clearAndSelect(0);
         // Set up the flow commands.
         this.cmbCommand.getItems().addAll(ModifierList.Command.values());
         this.cmbCommand.getSelectionModel().clearAndSelect(0);
-        // Try to load the model.
-        boolean ok = false;
-        try {
-            String flowName = "";
-            ok = this.setupModel(newDir);
-            // Save the directory if it's valid.
-            if (ok) {
-                this.modelDir = newDir;
-                // Check for a default flow.
-                flowName = this.getPref(newDir.getAbsolutePath() + ".flow", "");
-            }
-            // Toggle the buttons according to whether we have a valid directory.
-            this.setState(ok);
-            // Load the flow.  This must happen AFTER the state is set.
-            if (! flowName.isEmpty()) {
-                // Here we have a default flow.  Make sure it is still valid.
-                File flowFile = new File(flowName);
-                if (flowFile.exists()) {
-                    // It's valid, so we load it.
-                    this.loadFlowFile(flowFile);
-                }
-            }
-        } catch (IOException e) {
-            // An I/O error here just means a bad directory.  We ignore it.
+        // Start with the buttons disabled.  They will be enabled when the model is loaded.
+        this.setState(false);
+        // Try to load the model.  We also check for a default flow, which is loaded after the model.
+        if (ModelLoader.isModelDir(newDir)) {
+            String flowName = this.getPref(newDir.getAbsolutePath() + ".flow", "");
+            this.setupModel(newDir, flowName);
         }
     }
 
@@ -311,6 +357,7 @@ public class ModelManager extends ResizableController implements ICompoundFinder
         this.lstPath.setDisable(! valid);
         this.btnClearPath.setDisable(! valid);
         this.btnShowCommons.setDisable(! valid);
+        this.btnRunBatch.setDisable(! valid);
         this.btnSelectFlow.setDisable(! valid);
         this.btnFlowSave.setDisable(true);
         this.btnNewMod.setDisable(true);
@@ -318,6 +365,7 @@ public class ModelManager extends ResizableController implements ICompoundFinder
         this.btnShowPath.setDisable(! valid);
         this.btnSelectPath.setDisable(! valid);
         this.chkLooped.setDisable(! valid);
+        this.cmbEngine.setDisable(! valid);
         this.btnSelectSubsys.setDisable(! valid);
         this.btnUpdateSubsystem.setDisable(true);
         this.cmbSubsysUpdateType.setDisable(! valid);
@@ -326,66 +374,102 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     }
 
     /**
-     * Setup this application with a new model directory.
+     * Setup this application with a new model directory.  The model is loaded in the background,
+     * and the display is updated when the load completes.
      *
      * @param newDir	new model directory to use
+     * @param flowName	name of the flow file to load after the model, or an empty string if none
      *
-     * @return TRUE if successful, FALSE if the directory is not valid
-     *
-     * @throws IOException
+     * @return TRUE if the load was started, FALSE if the directory is not valid
      */
-    private boolean setupModel(File newDir) throws IOException {
+    private boolean setupModel(File newDir, String flowName) {
         boolean retVal = false;
-        if (newDir != null) {
-            // Check for the required files.
-            File modelFile = new File(newDir, "model.json");
-            File genomeFile = new File(newDir, "base.gto");
-            if (modelFile.canRead() && genomeFile.canRead()) {
-                // Here we have the necessary files.  Load the genome.
-                Genome baseGenome = new Genome(genomeFile);
-                // Now create the model.
-                this.model = new MetaModel(modelFile, baseGenome);
-                // Load the compounds into the list.
-                this.setupCompounds();
-                this.availableCompounds = this.lstCompounds.getItems();
-                this.txtSearchCompound.setText("");
-                this.filterList("");
-                this.clearCurrentPath();
-                this.cmbPathStyle.getSelectionModel().clearAndSelect(0);
-                this.txtFlowFile.setText("");
-                this.tblFlowMods.getItems().clear();
-                this.txtSubsysDirectory.setText("");
-                this.txtPathFile.setText("");
-                this.savedPath = null;
-                this.flowFile = null;
-                this.subsysDir = null;
-                this.txtFlowFile.setText("");
-                this.lstSubsystem.getItems().clear();
-                // Denote we have successfully loaded a model.
-                String message = String.format("%d reactions and %d compounds loaded from  %s.",
-                        this.model.getReactionCount(), this.model.getMetaboliteCount(),
-                        this.model.toString());
-                this.showMessage(message);
-                this.txtModelDirectory.setText(newDir.getName());
-                retVal = true;
-            }
+        if (ModelLoader.isModelDir(newDir)) {
+            // Here we have the necessary files.  Start the load in the background.
+            ModelLoader loader = new ModelLoader(newDir, this);
+            this.enableButtons(false);
+            this.txtSearchCompound.setDisable(true);
+            this.stopFlag = false;
+            var runner = loader.new Runner();
+            this.endHandler = this.new ModelInstaller(loader, runner, flowName);
+            new Thread(runner).start();
+            retVal = true;
         }
         return retVal;
     }
 
+    /**
+     * Install a newly-loaded model in this application.
+     *
+     * @param newModel		model that was loaded
+     * @param newScenarios	flow scenario networks for the model
+     * @param newDir		directory from which the model was loaded
+     */
+    private void installModel(MetaModel newModel, FlowScenarios newScenarios, File newDir) {
+        this.model = newModel;
+        this.modelDir = newDir;
+        // The scenario holder leaves the model with no flow modifiers applied.
+        this.scenarios = newScenarios;
+        this.network = newScenarios.getBase();
+        this.flowFingerprint = this.network.getFingerprint();
+        this.pathCache = new PathwayCache(PathwayCache.DEFAULT_SIZE);
+        this.pathCache.setFingerprint(this.flowFingerprint);
+        // Load the compounds into the list.
+        this.setupCompounds();
+        this.availableCompounds = this.lstCompounds.getItems();
+        this.txtSearchCompound.setText("");
+        this.filterList("");
+        this.clearCurrentPath();
+        this.cmbPathStyle.getSelectionModel().clearAndSelect(0);
+        this.txtFlowFile.setText("");
+        this.tblFlowMods.getItems().clear();
+        this.txtSubsysDirectory.setText("");
+        this.txtPathFile.setText("");
+        this.savedPath = null;
+        this.flowFile = null;
+        this.subsysDir = null;
+        this.txtFlowFile.setText("");
+        this.lstSubsystem.getItems().clear();
+        // Denote we have successfully loaded a model.
+        String message = String.format("%d reactions and %d compounds loaded from  %s.",
+                this.model.getReactionCount(), this.model.getMetaboliteCount(),
+                this.model.toString());
+        this.showMessage(message);
+        this.txtModelDirectory.setText(newDir.getName());
+    }
+
     /**
      * Configure the list view to only show compounds that match the filter.
      *
      * @param string	filter string
      */
     private void filterList(String string) {
-        // Convert the filter string to lower case.
-        String lc = string.toLowerCase();
-        // Clear and rebuild the list.
-        this.availableCompounds.clear();
-        Collection<MetaCompound> filtered = this.metaCompoundMap.values().stream().filter(x -> x.matches(lc))
-                .sorted().collect(Collectors.toList());
-        this.availableCompounds.addAll(filtered);
+        // Insure no background search overrides us.
+        this.newSearchGeneration();
+        // Update the list from the search index.  Only the changes are applied to the list control.
+        List<MetaCompound> filtered = this.compoundIndex.search(string);
+        this.searchListController.replaceAll(filtered);
+    }
+
+    /**
+     * Start a new compound search generation.  Any pending search is cancelled, and the results
+     * of any search in progress will be discarded.
+     *
+     * @return the number of the new generation
+     */
+    private long newSearchGeneration() {
+        if (this.pendingSearch != null)
+            this.pendingSearch.cancel(false);
+        return this.searchGeneration.incrementAndGet();
+    }
+
+    /**
+     * @return TRUE if the specified search generation is still the current one
+     *
+     * @param generation	search generation to check
+     */
+    private boolean isSearchCurrent(long generation) {
+        return this.searchGeneration.get() == generation;
     }
 
     /**
@@ -399,6 +483,8 @@ public class ModelManager extends ResizableController implements ICompoundFinder
             String name = model.getCompoundName(compound);
             this.metaCompoundMap.put(compound, new MetaCompound(compound, name));
         }
+        // Index the compounds for searching.
+        this.compoundIndex = new CompoundIndex(this.metaCompoundMap.values());
         log.info("{} compounds loaded from model {}.", this.metaCompoundMap.size(), this.model);
     }
 
@@ -422,8 +508,10 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     @FXML
     protected void showCommonCompounds() {
         // Insure the common compounds from the flow model are active.
-        this.applyFlow();
-        // Fill the compound list with the common compounds.
+        this.applyFlow(true);
+        // Fill the compound list with the common compounds.  Make sure a pending search does not
+        // overwrite them.
+        this.newSearchGeneration();
         var commons = this.model.getCommons();
         this.availableCompounds.clear();
         Set<MetaCompound> compounds = commons.stream().map(x -> this.getCompound(x)).filter(x -> x != null)
@@ -437,6 +525,16 @@ public class ModelManager extends ResizableController implements ICompoundFinder
      */
     @FXML
     protected void selectModelDirectory() {
+        if (this.endHandler != null)
+            BaseController.messageBox(AlertType.WARNING, "Background Error", "A background task is already running.");
+        else
+            this.chooseModelDirectory();
+    }
+
+    /**
+     * Ask the user for a new model directory and start loading it.
+     */
+    private void chooseModelDirectory() {
         DirectoryChooser chooser = new DirectoryChooser();
         chooser.setTitle("Select a Model Directory");
         // Start at the old model directory, or the current directory if there was none.
@@ -452,20 +550,12 @@ public class ModelManager extends ResizableController implements ICompoundFinder
             } else {
                 // Make sure that if we retry, we start from here.
                 chooser.setInitialDirectory(curDir);
-                // Test the directory.
-                try {
-                    found = this.setupModel(curDir);
-                    if (! found) {
-                        // Directory was invalid.  Try again.
-                        BaseController.messageBox(Alert.AlertType.WARNING, "Error Changing Model Directory",
-                                curDir + " does not have a base.gto and a model.json.");
-                    } else {
-                        // Here we found the directory.
-                        this.setState(true);
-                        this.setPref("modelDirectory", curDir.getAbsolutePath());
-                    }
-                } catch (IOException e) {
-                    BaseController.messageBox(AlertType.ERROR, "Error Loading Model", e.toString());
+                // Test the directory.  If it is valid, the load will finish in the background.
+                found = this.setupModel(curDir, "");
+                if (! found) {
+                    // Directory was invalid.  Try again.
+                    BaseController.messageBox(Alert.AlertType.WARNING, "Error Changing Model Directory",
+                            curDir + " does not have a base.gto and a model.json.");
                 }
             }
         }
@@ -542,10 +632,13 @@ public class ModelManager extends ResizableController implements ICompoundFinder
         if (this.endHandler != null)
             BaseController.messageBox(AlertType.WARNING, "Background Error", "A background task is already running.");
         else try {
-            // Apply the flow modifiers.
-            this.applyFlow();
+            // Apply the flow modifiers.  A search that displays pathways while it runs needs the model to be
+            // current, since the display cannot apply the flow modifiers during the search.
+            PathFinder.Type type = this.cmbPathStyle.getSelectionModel().getSelectedItem();
+            this.applyFlow(this.isModelSearch() || type == PathFinder.Type.ALTERNATIVES);
             // Create the path finder.
-            PathFinder finder = this.cmbPathStyle.getSelectionModel().getSelectedItem().create(this);
+            PathFinder finder = type.create(this);
+            this.alternativeViewer = null;
             // Run in the background to get the path.
             this.enableButtons(false);
             this.stopFlag = false;
@@ -558,13 +651,87 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     }
 
     /**
-     * Apply the current flow modifiers to the model.
+     * Run a batch of path queries from a user-selected query file.  The pathways found and a summary
+     * of the results are written to a user-selected output directory.
+     */
+    @FXML
+    protected void runBatch() {
+        if (this.endHandler != null)
+            BaseController.messageBox(AlertType.WARNING, "Background Error", "A background task is already running.");
+        else {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Select Path Query File");
+            chooser.setInitialDirectory(this.modelDir);
+            chooser.getExtensionFilters().addAll(QUERY_FILES, ALL_FILES);
+            File queryFile = chooser.showOpenDialog(this.getStage());
+            if (queryFile != null) {
+                DirectoryChooser dirChooser = new DirectoryChooser();
+                dirChooser.setTitle("Select Output Directory for Pathways");
+                dirChooser.setInitialDirectory(queryFile.getParentFile());
+                File outDir = dirChooser.showDialog(this.getStage());
+                if (outDir != null) try {
+                    // Apply the flow modifiers.
+                    this.applyFlow(this.getEngine() != PathFinder.Engine.BIDIRECTIONAL);
+                    // Create the batch.  This reads the queries and gets any pathways they need.
+                    PathBatch batch = new PathBatch(this, queryFile, outDir, Runtime.getRuntime().availableProcessors());
+                    // Looped queries need the model, even for a bidirectional search.
+                    if (batch.needsModel())
+                        this.applyFlow(true);
+                    // Run in the background.
+                    this.enableButtons(false);
+                    this.stopFlag = false;
+                    var runner = batch.new Runner();
+                    this.endHandler = () -> log.info("Pathway cache status:  {}.", this.pathCache);
+                    new Thread(runner).start();
+                } catch (Exception e) {
+                    BaseController.messageBox(AlertType.ERROR, "Error Running Path Batch", e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply the current flow modifiers.  If the active modifiers are the same as the ones last applied
+     * to the model, the model's reaction network is already correct and nothing is done.  If they are
+     * different but a reaction network for them is already held in the flow scenarios, and the caller
+     * does not need the model itself, the held network is used and the model is left alone.  Only a
+     * bidirectional search without looping can run without the model, so the other operations always
+     * bring the model up to date.  The reachability index for a new network is built in the background.
+     *
+     * @param needModel		TRUE if the model must reflect the current flow modifiers
      */
-    private void applyFlow() {
-        this.showMessage("Applying flow modifiers.");
+    private void applyFlow(boolean needModel) {
         ModifierList flowMods = this.flowModifier.getModifiers();
-        flowMods.apply(this.model);
-        this.model.buildReactionNetwork();
+        String fingerprint = FlowFingerprint.of(flowMods);
+        IReactionNetwork held = this.scenarios.find(fingerprint);
+        if (fingerprint.equals(this.flowFingerprint))
+            log.debug("Flow modifiers unchanged:  reaction network reused.");
+        else if (held != null && ! needModel)
+            log.debug("Flow scenario {} is held:  model rebuild skipped.", fingerprint);
+        else {
+            this.showMessage("Applying flow modifiers.");
+            flowMods.apply(this.model);
+            this.model.buildReactionNetwork();
+            this.flowFingerprint = fingerprint;
+            this.pathCache.setFingerprint(fingerprint);
+        }
+        IReactionNetwork newNetwork = (held != null ? held : this.scenarios.getCurrent(fingerprint));
+        if (newNetwork != this.network && newNetwork != null) {
+            // Build the new network's reachability index in the background, so it is usually ready
+            // by the time a search checks its legs.
+            Thread indexer = new Thread(() -> newNetwork.getReachability(), "ReachabilityIndexer");
+            indexer.setDaemon(true);
+            indexer.start();
+        }
+        this.network = newNetwork;
+    }
+
+    /**
+     * @return TRUE if a path search with the current parameters needs the model to reflect the
+     * 		   current flow modifiers
+     */
+    private boolean isModelSearch() {
+        return (this.getEngine() != PathFinder.Engine.BIDIRECTIONAL || this.getLoopFlag());
     }
 
     /**
@@ -598,32 +765,32 @@ public class ModelManager extends ResizableController implements ICompoundFinder
 
     /**
      * Load a subsystem from a subsystem directory.  The subsystem in here is actually a set of
-     * path files that are stored as a collection of pathways.
+     * path files that are stored as a collection of pathways.  The pathways are loaded in the
+     * background.
      */
     @FXML
     protected void selectSubsysDirectory() {
+        File subDir = this.chooseSubsysDirectory();
+        if (subDir != null)
+            this.loadSubsys(subDir, false);
+    }
+
+    /**
+     * Ask the user for a subsystem directory.
+     *
+     * @return the directory selected, or NULL if the user cancelled
+     */
+    private File chooseSubsysDirectory() {
         DirectoryChooser chooser = new DirectoryChooser();
         chooser.setTitle("Select Subsystem Directory");
         chooser.setInitialDirectory(this.modelDir);
         // Loop until we find a directory or the user cancels out.
-        boolean found = false;
-        while (! found) {
-            File subDir = chooser.showDialog(this.getStage());
-            if (subDir == null) {
-                // Here the user is canceling out.
-                found = true;
-            } else {
-                // Make sure that if we retry, we start from here.
-                chooser.setInitialDirectory(subDir);
-                // Test the directory.
-                try {
-                    this.loadSubsys(subDir);
-                    found = true;
-                } catch (Exception e) {
-                    BaseController.messageBox(AlertType.ERROR, "Error Loading Subsystem", e.toString());
-                }
-            }
+        File retVal = chooser.showDialog(this.getStage());
+        while (retVal != null && ! retVal.isDirectory()) {
+            BaseController.messageBox(AlertType.ERROR, "Error Loading Subsystem", retVal + " is not a directory.");
+            retVal = chooser.showDialog(this.getStage());
         }
+        return retVal;
     }
 
     /**
@@ -652,10 +819,10 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     protected void showSubsysPath(MouseEvent event) {
         if (event.getClickCount() >= 2) {
             // Here we have a double-click.  Get the selected path.
-            Pathway path = this.lstSubsystem.getSelectionModel().getSelectedItem();
+            SubsystemPath path = this.lstSubsystem.getSelectionModel().getSelectedItem();
             if (path != null) try {
-                this.displayPath(path);
-            } catch (IOException e) {
+                this.displayPath(path.getPathway(this.model));
+            } catch (IOException | ParseFailureException | JsonException e) {
                 BaseController.messageBox(AlertType.ERROR, "Error Loading Path", e.toString());
             }
         }
@@ -677,7 +844,7 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     @FXML
     protected void updateSubsystem() {
         // Apply the current flow modifiers to the model.
-        this.applyFlow();
+        this.applyFlow(true);
         // Set up the subsystem builder of the appropriate type.
         try {
             // Create the appropriate subsystem builder.
@@ -706,7 +873,7 @@ public class ModelManager extends ResizableController implements ICompoundFinder
         else {
             // Loop through the subsystem paths, adding any output compounds not already in the path list.
             int count = 0;
-            for (Pathway path : this.lstSubsystem.getItems()) {
+            for (SubsystemPath path : this.lstSubsystem.getItems()) {
                 String compoundId = path.getOutput();
                 if (! this.pathListController.contains(compoundId)) {
                     MetaCompound compound = this.getCompound(compoundId);
@@ -721,41 +888,74 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     }
 
     /**
-     * Load a subsystem's paths into memory.
+     * Load a subsystem's path descriptors into memory.  The descriptors are read in the background, and added
+     * to the subsystem list in sorted order as they arrive.  An archived subsystem's paths are only parsed when
+     * they are used.
      *
      * @param subDir	directory containing the subsystem's paths
+     * @param wait		TRUE to wait for the load to finish before returning
+     */
+    private void loadSubsys(File subDir, boolean wait) {
+        this.lstSubsystem.getItems().clear();
+        SubsystemLoader loader = new SubsystemLoader(subDir, this.model, this,
+                batch -> Platform.runLater(() -> this.mergeSubsys(batch)));
+        this.enableButtons(false);
+        this.stopFlag = false;
+        var runner = loader.new Runner();
+        IEndHandler displayer = this.new SubsystemDisplayer(loader, runner);
+        if (! wait) {
+            this.endHandler = displayer;
+            new Thread(runner).start();
+        } else {
+            // Here the caller cannot go on without the pathways.  We process events in a nested loop, so
+            // that the progress is displayed and the load can be aborted, until the load completes.
+            final Object key = new Object();
+            this.endHandler = () -> {
+                displayer.handleCompletion();
+                Platform.exitNestedEventLoop(key, null);
+            };
+            new Thread(runner).start();
+            Platform.enterNestedEventLoop(key);
+        }
+    }
+
+    /**
+     * Merge a sorted batch of pathways into the subsystem list.
      *
-     * @return TRUE if successful, FALSE if no paths were found
-     *
-     * @throws IOException
-     * @throws JsonException
-     * @throws ParseFailureException
-     */
-    private boolean loadSubsys(File subDir) throws IOException, ParseFailureException, JsonException {
-        File[] pathFiles = subDir.listFiles(PATH_FILE_FILTER);
-        // Set up the path list.
-        var pathList = new ArrayList<Pathway>(pathFiles.length);
-        if (pathFiles.length > 0) {
-            // Here we have paths to load.
-            for (File pathFile : pathFiles) {
-                Pathway path = new Pathway(pathFile, this.model);
-                pathList.add(path);
+     * @param batch		batch of pathways to add, sorted from shortest to longest
+     */
+    private void mergeSubsys(List<SubsystemPath> batch) {
+        var items = this.lstSubsystem.getItems();
+        if (items.isEmpty() || items.get(items.size() - 1).compareTo(batch.get(0)) <= 0) {
+            // The batch goes after everything we have, which is the normal case for an archive.
+            items.addAll(batch);
+        } else {
+            // Merge the two sorted lists and replace the list contents in a single operation.
+            List<SubsystemPath> merged = new ArrayList<SubsystemPath>(items.size() + batch.size());
+            int i = 0;
+            int j = 0;
+            while (i < items.size() && j < batch.size()) {
+                if (items.get(i).compareTo(batch.get(j)) <= 0)
+                    merged.add(items.get(i++));
+                else
+                    merged.add(batch.get(j++));
             }
-            // Sort them in order from shortest to longest.
-            Collections.sort(pathList);
+            merged.addAll(items.subList(i, items.size()));
+            merged.addAll(batch.subList(j, batch.size()));
+            items.setAll(merged);
         }
-        // Save the loaded paths.
-        String subsysName = subDir.getName();
-        this.lstSubsystem.getItems().clear();
-        this.lstSubsystem.getItems().addAll(pathList);
-        this.txtMessageBuffer.setText(String.format("%d pathways loaded from subsystem %s.", pathList.size(),
-                subsysName));
-        // Save the subsystem directory.
-        this.txtSubsysDirectory.setText(subsysName);
+    }
+
+    /**
+     * Save the subsystem directory.
+     *
+     * @param subDir	new subsystem directory, or NULL if there is none
+     */
+    private void setSubsysDir(File subDir) {
         this.subsysDir = subDir;
-        this.btnLoadOutputs.setDisable(false);
-        this.btnUpdateSubsystem.setDisable(false);
-        return true;
+        this.txtSubsysDirectory.setText(subDir == null ? "" : subDir.getName());
+        this.btnLoadOutputs.setDisable(subDir == null);
+        this.btnUpdateSubsystem.setDisable(subDir == null);
     }
 
     /**
@@ -780,7 +980,7 @@ public class ModelManager extends ResizableController implements ICompoundFinder
      * @throws IOException
      */
     private void displayPath(Pathway path) throws IOException {
-        this.applyFlow();
+        this.applyFlow(true);
         Stage pathStage = new Stage();
         PathDisplay pathViewer = (PathDisplay) BaseController.loadFXML(App.class, "PathDisplay", pathStage);
         pathViewer.init(path, this);
@@ -803,6 +1003,19 @@ public class ModelManager extends ResizableController implements ICompoundFinder
         return this.model;
     }
 
+    /**
+     * @return the reaction network for the current flow scenario
+     */
+    @Override
+    public IReactionNetwork getNetwork() {
+        return this.network;
+    }
+
+    @Override
+    public PathwayCache getPathCache() {
+        return this.pathCache;
+    }
+
     /**
      * @return the current model directory
      */
@@ -816,12 +1029,15 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     }
 
     @Override
-    public Collection<Pathway> getSubsysPathways() {
+    public Collection<SubsystemPath> getSubsysPathways() {
         if (this.subsysDir == null) {
-            // There is no subsystem selected.  Ask the user to select one.
-            this.selectSubsysDirectory();
+            // There is no subsystem selected.  Ask the user to select one, and wait for it to load, since
+            // the caller needs the pathways now.
+            File subDir = this.chooseSubsysDirectory();
+            if (subDir != null)
+                this.loadSubsys(subDir, true);
         }
-        Collection<Pathway> retVal = null;
+        Collection<SubsystemPath> retVal = null;
         if (this.subsysDir != null)
             retVal = this.lstSubsystem.getItems();
         return retVal;
@@ -848,13 +1064,43 @@ public class ModelManager extends ResizableController implements ICompoundFinder
         return this.chkLooped.isSelected();
     }
 
+    @Override
+    public PathFinder.Engine getEngine() {
+        return this.cmbEngine.getSelectionModel().getSelectedItem();
+    }
+
+    /**
+     * The alternatives are all shown in a single window with a selector.  The flow modifiers were applied
+     * before the search started, so they are not applied here.
+     */
+    @Override
+    public void showAlternative(Pathway path, int rank) {
+        Platform.runLater(() -> {
+            log.info("Displaying alternative pathway {} with {} reactions.", rank, path.size());
+            try {
+                if (this.alternativeViewer == null) {
+                    Stage pathStage = new Stage();
+                    PathDisplay pathViewer = (PathDisplay) BaseController.loadFXML(App.class, "PathDisplay", pathStage);
+                    pathViewer.init(path, this);
+                    pathStage.show();
+                    this.alternativeViewer = pathViewer;
+                }
+                this.alternativeViewer.addAlternative(path, rank);
+            } catch (IOException e) {
+                BaseController.messageBox(AlertType.ERROR, "Error Displaying Path", e.toString());
+            }
+        });
+    }
+
     @Override
     public File getSubsysDirectory() {
         File retVal = this.subsysDir;
         if (retVal == null) {
-            // There is no subsystem selected.  Ask the user to select one.
-            this.selectSubsysDirectory();
-            retVal = this.subsysDir;
+            // There is no subsystem selected.  Ask the user to select one.  It will be displayed after
+            // the build.
+            retVal = this.chooseSubsysDirectory();
+            if (retVal != null)
+                this.setSubsysDir(retVal);
         }
         return retVal;
     }
@@ -892,10 +1138,13 @@ public class ModelManager extends ResizableController implements ICompoundFinder
         Platform.runLater(new Runnable() {
             @Override
             public void run() {
-                if (endHandler != null)
-                    endHandler.handleCompletion();
+                // The handler may start a new background task, so we clear the old one first.
+                IEndHandler handler = endHandler;
+                endHandler = null;
                 enableButtons(true);
-                endHandler = null;            }
+                if (handler != null)
+                    handler.handleCompletion();
+            }
         });
 
     }
@@ -906,6 +1155,7 @@ public class ModelManager extends ResizableController implements ICompoundFinder
     protected void enableButtons(final boolean state) {
         btnClearPath.setDisable(! state);
         btnComputePath.setDisable(! state);
+        btnRunBatch.setDisable(! state);
         btnFlowSave.setDisable(! state);
         btnLoadOutputs.setDisable(! state);
         btnNewMod.setDisable(! state);
@@ -915,12 +1165,15 @@ public class ModelManager extends ResizableController implements ICompoundFinder
         btnShowPath.setDisable(! state);
         btnUpdateSubsystem.setDisable(! state);
         chkLooped.setDisable(! state);
+        cmbEngine.setDisable(! state);
         cmbCommand.setDisable(! state);
         cmbPathStyle.setDisable(! state);
         cmbSubsysUpdateType.setDisable(! state);
         lstCompounds.setDisable(! state);
         lstPath.setDisable(! state);
         lstSubsystem.setDisable(! state);
+        tblFlowMods.setDisable(! state);
+        btnShowCommons.setDisable(! state);
         btnAbort.setVisible(! state);
     }
 
@@ -945,7 +1198,8 @@ public class ModelManager extends ResizableController implements ICompoundFinder
         @Override
         public void handleCompletion() {
             Pathway newPath = this.task.getResult();
-            if (newPath != null)
+            log.info("Pathway cache status:  {}.", ModelManager.this.pathCache);
+            if (newPath != null && ! this.task.isStreamed())
                 try {
                     ModelManager.this.displayPath(newPath);
                 } catch (IOException e) {
@@ -978,10 +1232,108 @@ public class ModelManager extends ResizableController implements ICompoundFinder
             boolean okFlag = task.getResult();
             if (okFlag) {
                 // The subsystem has updated, so we need to reload it.
-                try {
-                    ModelManager.this.loadSubsys(ModelManager.this.subsysDir);
-                } catch (IOException | ParseFailureException | JsonException e) {
-                    BaseController.messageBox(AlertType.ERROR, "Error Displaying Subsystem", e.toString());
+                ModelManager.this.loadSubsys(ModelManager.this.subsysDir, false);
+            }
+        }
+
+    }
+
+    /**
+     * This is the end-of-task handler for the completion of a subsystem load.  If the load was
+     * successful, the subsystem directory is saved.  Otherwise, the partial subsystem is cleared.
+     */
+    private class SubsystemDisplayer implements IEndHandler {
+
+        /** background task being run */
+        private SubsystemLoader.Runner task;
+        /** subsystem loader used by the task */
+        private SubsystemLoader loader;
+
+        /**
+         * Construct the handler for the subsystem load.
+         *
+         * @param loader	subsystem loader used by the task
+         * @param task		background task performing the load
+         */
+        protected SubsystemDisplayer(SubsystemLoader loader, SubsystemLoader.Runner task) {
+            this.loader = loader;
+            this.task = task;
+        }
+
+        @Override
+        public void handleCompletion() {
+            File subDir = this.loader.getSubsysDir();
+            if (this.task.getResult()) {
+                ModelManager.this.setSubsysDir(subDir);
+                ModelManager.this.txtMessageBuffer.setText(String.format("%d pathways loaded from subsystem %s.",
+                        this.loader.getCount(), subDir.getName()));
+            } else {
+                // The error is in the message buffer.
+                ModelManager.this.lstSubsystem.getItems().clear();
+                ModelManager.this.setSubsysDir(null);
+                BaseController.messageBox(AlertType.ERROR, "Error Loading Subsystem",
+                        ModelManager.this.txtMessageBuffer.getText());
+            }
+        }
+
+    }
+
+    /**
+     * This is the end-of-task handler for the completion of a model load.  If the load was successful,
+     * the new model is installed and the default flow file (if any) is loaded.
+     */
+    private class ModelInstaller implements IEndHandler {
+
+        /** background task being run */
+        private ModelLoader.Runner task;
+        /** model loader used by the task */
+        private ModelLoader loader;
+        /** directory being loaded */
+        private File newDir;
+        /** name of the flow file to load, or an empty string if none */
+        private String flowName;
+
+        /**
+         * Construct the handler for the model load.
+         *
+         * @param loader		model loader used by the task
+         * @param task		background task performing the load
+         * @param flowName	name of the flow file to load afterward, or an empty string if none
+         */
+        protected ModelInstaller(ModelLoader loader, ModelLoader.Runner task, String flowName) {
+            this.loader = loader;
+            this.task = task;
+            this.newDir = loader.getModelDir();
+            this.flowName = flowName;
+        }
+
+        @Override
+        public void handleCompletion() {
+            MetaModel newModel = this.task.getResult();
+            if (newModel == null) {
+                // The load failed, and the error is in the message buffer.  If we have an old model,
+                // it is still active.
+                if (ModelManager.this.model == null)
+                    ModelManager.this.setState(false);
+                else
+                    ModelManager.this.txtSearchCompound.setDisable(false);
+            } else {
+                ModelManager.this.installModel(newModel, this.loader.getScenarios(), this.newDir);
+                // Toggle the buttons and remember the directory.
+                ModelManager.this.setState(true);
+                ModelManager.this.setPref("modelDirectory", this.newDir.getAbsolutePath());
+                // Load the flow.  This must happen AFTER the state is set.
+                if (! this.flowName.isEmpty()) {
+                    // Here we have a default flow.  Make sure it is still valid.
+                    File flowFile = new File(this.flowName);
+                    if (flowFile.exists()) {
+                        // It's valid, so we load it.
+                        try {
+                            ModelManager.this.loadFlowFile(flowFile);
+                        } catch (IOException e) {
+                            BaseController.messageBox(AlertType.ERROR, "Invalid Flow File", e.toString());
+                        }
+                    }
                 }
             }
         }
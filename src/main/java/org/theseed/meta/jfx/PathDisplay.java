@@ -6,6 +6,7 @@ package org.theseed.meta.jfx;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -26,8 +27,10 @@ import org.theseed.metabolism.Pathway;
 import org.theseed.metabolism.ProteinRating;
 import org.theseed.metabolism.Reaction;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TableView;
 import javafx.stage.FileChooser;
@@ -36,6 +39,12 @@ import javafx.stage.FileChooser;
  * This window displays a pathway.  It also allows the user to save the pathway to a file and load other
  * pathways.  The display includes a list of input compounds that is draggable onto the main form.
  *
+ * The window can also display several alternative pathways, which may arrive while the search that finds
+ * them is still running.  In that case a selector lets the user choose which alternative is shown.  The
+ * model may be searched by the background task at the same time, so the display reads it while holding
+ * the model's lock.  That is done on a separate thread, so the window does not freeze while a search holds
+ * the lock, and only the finished results are passed back to the JavaFX thread.
+ *
  * @author Bruce Parrello
  *
  */
@@ -56,6 +65,10 @@ public class PathDisplay extends ResizableController {
     protected GeneTable geneController;
     /** saved model directory */
     private File modelDir;
+    /** parent model manager */
+    private ModelManager parent;
+    /** number of pathway displays requested, used to discard results for a pathway no longer wanted */
+    private int requests;
 
     // CONTROLS
 
@@ -79,6 +92,56 @@ public class PathDisplay extends ResizableController {
     @FXML
     private TableView<ProteinRating> tblGenes;
 
+    /** selector for alternative pathways */
+    @FXML
+    private ComboBox<Alternative> cmbAlternatives;
+
+    /**
+     * This object describes one of several alternative pathways in the display.
+     */
+    private static class Alternative {
+
+        /** alternative pathway */
+        private final Pathway path;
+        /** rank of the pathway (1 for the shortest) */
+        private final int rank;
+
+        /**
+         * Create an alternative pathway descriptor.
+         *
+         * @param path		alternative pathway
+         * @param rank		rank of the pathway
+         */
+        protected Alternative(Pathway path, int rank) {
+            this.path = path;
+            this.rank = rank;
+        }
+
+        @Override
+        public String toString() {
+            return "Alternative " + this.rank + " (" + this.path.size() + " reactions)";
+        }
+
+    }
+
+
+    /**
+     * This object contains the data computed from the model for displaying a pathway.
+     */
+    private static class Contents {
+
+        /** pathway displayed */
+        private Pathway path;
+        /** IDs of the input compounds */
+        private Set<String> inputs;
+        /** IDs of the output compounds */
+        private Collection<String> outputs;
+        /** reaction triggers, sorted */
+        private Set<ReactionTrigger> triggers;
+        /** protein ratings for the gene table */
+        private List<ProteinRating> ratings;
+
+    }
 
     public PathDisplay() {
         super(200, 200, 1000, 600);
@@ -101,33 +164,117 @@ public class PathDisplay extends ResizableController {
      * @param model		underlying metabolic model
      */
     public void init(Pathway path, ModelManager parent) {
-        // Save the path and model.
-        this.path = path;
+        // Save the model.
+        this.parent = parent;
         this.model = parent.getModel();
         this.modelDir = parent.getModelDir();
-        // Set up the table control.
-        this.tableController = new PathwayTable(this.tblPathway, this.path, this.model);
         // Set up the list of input compounds.
         this.inputController = new CompoundList.Normal(this.lstInputCompounds, parent);
         // Set up the list of output compounds.
         this.outputController = new CompoundList.Normal(this.lstOutputCompounds, parent);
-        // Load the input compounds.
-        var inputs = path.getInputs(this.model, true);
-        Set<String> inputSet = inputs.sortedCounts().stream().map(x -> x.getKey()).collect(Collectors.toSet());
-        this.fillCompoundList(this.lstInputCompounds, inputSet, parent);
-        // Load the output compounds.
-        var outputs = path.getOutputs();
-        this.fillCompoundList(this.lstOutputCompounds, outputs, parent);
-        // Get the weight map and the branch list.
-        Map<String, CompoundRating> weightMap = CompoundRating.getRatingMap(this.path, this.model);
-        Map<String, Set<Reaction>> branches = this.path.getBranches(model);
         // Set up the trigger list.
         this.lstTriggers.setCellFactory((x) -> new ReactionTriggerCell());
-        Set<ReactionTrigger> triggers = this.getTriggers(weightMap, branches);
-        this.lstTriggers.getItems().addAll(triggers);
+        // Display the path.
+        this.showPath(path);
+    }
+
+    /**
+     * Display a pathway in this window, replacing the current one.  The display data is computed from
+     * the model in the background, and the window is updated when it is ready.
+     *
+     * @param path		pathway to display
+     */
+    private void showPath(Pathway path) {
+        final int request = ++this.requests;
+        Thread computer = new Thread(() -> {
+            Contents contents = this.computeContents(path);
+            Platform.runLater(() -> {
+                // If another pathway has been requested since, these results are obsolete.
+                if (request == this.requests)
+                    this.displayContents(contents);
+            });
+        }, "PathDisplay");
+        computer.setDaemon(true);
+        computer.start();
+    }
+
+    /**
+     * Compute the display data for a pathway.  This holds the model's lock, so it should not be run on
+     * the JavaFX thread.
+     *
+     * @param path		pathway to display
+     *
+     * @return the display data for the pathway
+     */
+    private Contents computeContents(Pathway path) {
+        Contents retVal = new Contents();
+        retVal.path = path;
+        synchronized (this.model) {
+            // Compute the input and output compounds.
+            var inputs = path.getInputs(this.model, true);
+            retVal.inputs = inputs.sortedCounts().stream().map(x -> x.getKey()).collect(Collectors.toSet());
+            retVal.outputs = path.getOutputs();
+            // Get the weight map and the branch list.
+            Map<String, CompoundRating> weightMap = CompoundRating.getRatingMap(path, this.model);
+            Map<String, Set<Reaction>> branches = path.getBranches(this.model);
+            // Compute the triggers and the gene ratings.
+            retVal.triggers = this.getTriggers(path, weightMap, branches);
+            retVal.ratings = path.getProteinRatings(this.model, weightMap, branches);
+        }
+        return retVal;
+    }
+
+    /**
+     * Fill the window's controls with the display data for a pathway.  This must be run on the JavaFX thread.
+     *
+     * @param contents		display data for the pathway
+     */
+    private void displayContents(Contents contents) {
+        this.path = contents.path;
+        this.tblPathway.getColumns().clear();
+        this.tblPathway.getItems().clear();
+        this.tblGenes.getColumns().clear();
+        this.tblGenes.getItems().clear();
+        this.lstInputCompounds.getItems().clear();
+        this.lstOutputCompounds.getItems().clear();
+        this.lstTriggers.getItems().clear();
+        // Set up the table control.
+        this.tableController = new PathwayTable(this.tblPathway, this.path, this.model);
+        // Load the compound lists.
+        this.fillCompoundList(this.lstInputCompounds, contents.inputs, this.parent);
+        this.fillCompoundList(this.lstOutputCompounds, contents.outputs, this.parent);
+        // Set up the trigger list.
+        this.lstTriggers.getItems().addAll(contents.triggers);
         // Set up the gene table.
-        var ratings = path.getProteinRatings(this.model, weightMap, branches);
-        this.geneController = new GeneTable(this.tblGenes, this.model, ratings);
+        this.geneController = new GeneTable(this.tblGenes, this.model, contents.ratings);
+    }
+
+    /**
+     * Add an alternative pathway to this window.  The first alternative added is displayed, and the
+     * alternative selector is shown.
+     *
+     * @param path		alternative pathway to add
+     * @param rank		rank of the pathway (1 for the shortest)
+     */
+    public void addAlternative(Pathway path, int rank) {
+        Alternative alternative = new Alternative(path, rank);
+        var items = this.cmbAlternatives.getItems();
+        items.add(alternative);
+        if (items.size() == 1) {
+            this.cmbAlternatives.setVisible(true);
+            this.cmbAlternatives.setManaged(true);
+            this.cmbAlternatives.getSelectionModel().select(alternative);
+        }
+    }
+
+    /**
+     * Display the alternative pathway chosen by the user.
+     */
+    @FXML
+    protected void selectAlternative() {
+        Alternative alternative = this.cmbAlternatives.getSelectionModel().getSelectedItem();
+        if (alternative != null && alternative.path != this.path)
+            this.showPath(alternative.path);
     }
 
     /**
@@ -148,17 +295,19 @@ public class PathDisplay extends ResizableController {
     /**
      * Compute the reaction triggers.
      *
-     * @param branches		map of compound IDs to branching reactions
+     * @param path			pathway whose triggers are desired
      * @param weightMap 	map of compound IDs to compound ratings
+     * @param branches		map of compound IDs to branching reactions
      *
      * @return a sorted set of the reaction triggers for the pathway
      */
-    private Set<ReactionTrigger> getTriggers(Map<String, CompoundRating> weightMap, Map<String, Set<Reaction>> branches) {
+    private Set<ReactionTrigger> getTriggers(Pathway path, Map<String, CompoundRating> weightMap,
+            Map<String, Set<Reaction>> branches) {
         // Compute the weight map.
         // We want the triggers sorted, so we put them in a tree set.
         var retVal = new TreeSet<ReactionTrigger>();
         // Loop through the reactions.
-        for (Pathway.Element element : this.path) {
+        for (Pathway.Element element : path) {
             Reaction reaction = element.getReaction();
             // Compute the reaction weight.
             double weight = reaction.getWeight(weightMap, ! element.isReversed());
@@ -0,0 +1,957 @@
+/**
+ *
+ */
+package org.theseed.meta.jfx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.meta.controllers.MetaCompound;
+import org.theseed.meta.finders.PathFinder;
+import org.theseed.meta.finders.SubsystemBuilder;
+import org.theseed.meta.network.FlowFingerprint;
+import org.theseed.meta.network.FlowScenarios;
+import org.theseed.meta.network.IReactionNetwork;
+import org.theseed.meta.network.PathwayCache;
+import org.theseed.meta.storage.SubsystemPath;
+import org.theseed.meta.storage.SubsystemReader;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.Pathway;
+import org.theseed.metabolism.mods.ModifierList;
+import org.theseed.shared.meta.IProgressReporter;
+
+import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This object is a long-running local path-finding service.  It listens for HTTP requests on the loopback
+ * interface, and keeps the models it has loaded warm, so that scripted queries do not pay for a JVM start and
+ * a model parse each time.  Requests are answered concurrently by a pool of worker threads.
+ *
+ * Every request must carry the service's access token in an "Authorization: Bearer" header.  The token is
+ * chosen when the service starts.  Search requests must be posted with a content type of "application/json",
+ * so that a web page cannot submit one as a simple form post.  Every file or directory named in a request
+ * must be inside one of the root directories the service was started with.
+ *
+ * Requests are posted as JSON objects.  The endpoints are
+ *
+ * 	POST /path		find a pathway; the response is the pathway in the format written by Pathway.save
+ * 	POST /subsys	update a subsystem directory; the response is a list of the pathways written
+ * 	GET /metrics	return the request latency metrics
+ *
+ * The request fields are "model" (model directory), "compounds" (list of compound IDs), "type" (path type
+ * or subsystem builder type), "engine" (search engine), "loop" (TRUE to loop the pathway), "flow" (flow
+ * modifier file), "start" (starting pathway file), and "subsys" (subsystem directory).  Only "model" and
+ * "compounds" are required.  Every response carries the request's elapsed time in the X-Elapsed-Ms header.
+ *
+ * A model's reaction network depends on the flow modifiers applied to it, so each model has a read-write
+ * lock.  Requests using the flow modifiers already applied share the model, and a request with different
+ * modifiers waits for exclusive access to apply them.  Each flow scenario gets its own pathway cache.  The
+ * read lock only keeps the flow modifiers in place; requests sharing it still make their searches in the
+ * model one at a time under the model's own lock, while searches on the flow network run in parallel.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PathService {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(PathService.class);
+    /** map of model directory names to loaded models, in least-recently-used order */
+    private final Map<String, FutureTask<ModelEntry>> models;
+    /** latency metrics */
+    private final Metrics metrics;
+    /** map of subsystem directory names to the locks serializing their builds */
+    private final Map<String, Object> subsysLocks;
+    /** access token required on every request */
+    private final String token;
+    /** directories that may contain the files named in a request */
+    private final List<Path> roots;
+    /** HTTP server */
+    private HttpServer server;
+    /** request worker pool */
+    private ExecutorService workers;
+    /** default port number */
+    public static final int DEFAULT_PORT = 8765;
+    /** default maximum number of models to keep loaded */
+    public static final int DEFAULT_MODELS = 4;
+    /** number of recent requests to keep in the metrics */
+    private static final int RECENT_SIZE = 100;
+    /** number of random bytes in a generated access token */
+    private static final int TOKEN_BYTES = 24;
+
+    /**
+     * This object reports model-loading progress to the log.
+     */
+    private static class LogReporter implements IProgressReporter {
+
+        @Override
+        public void showProgress(double p) {
+        }
+
+        @Override
+        public void showStatus(String msg) {
+            log.info("Status: {}", msg);
+        }
+
+        @Override
+        public void showCompleted() {
+        }
+
+    }
+
+    /**
+     * This object holds a loaded model and the state needed to search it.
+     */
+    private static class ModelEntry {
+
+        /** metabolic model */
+        private final MetaModel model;
+        /** flow scenario networks for the model */
+        private final FlowScenarios scenarios;
+        /** map of compound IDs to compound descriptors */
+        private final Map<String, MetaCompound> compoundMap;
+        /** lock protecting the flow modifiers applied to the model */
+        private final ReentrantReadWriteLock lock;
+        /** fingerprint of the flow modifiers currently applied to the model */
+        private String applied;
+        /** map of flow fingerprints to pathway caches */
+        private final Map<String, PathwayCache> caches;
+        /** map of subsystem directory names to loaded subsystems */
+        private final Map<String, SubsysEntry> subsystems;
+
+        /**
+         * Create a model entry from a finished model loader.
+         *
+         * @param loader	loader that has loaded the model
+         * @param model		model that was loaded
+         */
+        protected ModelEntry(ModelLoader loader, MetaModel model) {
+            this.model = model;
+            this.scenarios = loader.getScenarios();
+            this.compoundMap = new HashMap<String, MetaCompound>(500);
+            for (String id : model.getMetaboliteMap().keySet())
+                this.compoundMap.put(id, new MetaCompound(id, model.getCompoundName(id)));
+            this.lock = new ReentrantReadWriteLock();
+            // The scenario holder leaves the model with no flow modifiers applied.
+            this.applied = this.scenarios.getBase().getFingerprint();
+            this.caches = new HashMap<String, PathwayCache>();
+            this.subsystems = new HashMap<String, SubsysEntry>();
+        }
+
+        /**
+         * Insure the specified flow modifiers are applied to the model and lock them in place.  The
+         * caller must call "release" when the search is done.  The model is changed while holding both the
+         * write lock and the model's own lock, so nothing that parses or searches the model can overlap the
+         * change.
+         *
+         * @param flowMods		flow modifiers to apply
+         * @param fingerprint	fingerprint of the flow modifiers
+         *
+         * @return the reaction network for the flow scenario
+         */
+        protected IReactionNetwork acquire(ModifierList flowMods, String fingerprint) {
+            this.lock.readLock().lock();
+            if (! fingerprint.equals(this.applied)) {
+                // We need to change the flow modifiers, which requires exclusive access.
+                this.lock.readLock().unlock();
+                this.lock.writeLock().lock();
+                try {
+                    if (! fingerprint.equals(this.applied)) {
+                        // Other users of the model, such as the subsystem loaders, only hold its lock.
+                        synchronized (this.model) {
+                            flowMods.apply(this.model);
+                            this.model.buildReactionNetwork();
+                        }
+                        this.applied = fingerprint;
+                    }
+                    // Downgrade to a read lock.
+                    this.lock.readLock().lock();
+                } finally {
+                    this.lock.writeLock().unlock();
+                }
+            }
+            return this.scenarios.getCurrent(fingerprint);
+        }
+
+        /**
+         * Release the flow modifiers locked by "acquire".
+         */
+        protected void release() {
+            this.lock.readLock().unlock();
+        }
+
+        /**
+         * @return the pathway cache for a flow scenario
+         *
+         * @param fingerprint	fingerprint of the scenario's flow modifiers
+         */
+        protected synchronized PathwayCache getCache(String fingerprint) {
+            return this.caches.computeIfAbsent(fingerprint, x -> {
+                PathwayCache retVal = new PathwayCache(PathwayCache.DEFAULT_SIZE);
+                retVal.setFingerprint(x);
+                return retVal;
+            });
+        }
+
+        /**
+         * @return the pathway descriptors in a subsystem, reloading them if the subsystem has changed
+         *
+         * @param subDir	subsystem directory
+         *
+         * @throws IOException
+         * @throws ParseFailureException
+         * @throws JsonException
+         */
+        protected synchronized Collection<SubsystemPath> getSubsystem(File subDir)
+                throws IOException, ParseFailureException, JsonException {
+            String key = subDir.getAbsolutePath();
+            SubsysEntry retVal = this.subsystems.get(key);
+            if (retVal == null || retVal.modified != subDir.lastModified()) {
+                retVal = new SubsysEntry(subDir.lastModified(), HeadlessManager.loadSubsys(subDir, this.model));
+                this.subsystems.put(key, retVal);
+            }
+            return retVal.paths;
+        }
+
+    }
+
+    /**
+     * This object holds the pathways loaded from a subsystem directory.
+     */
+    private static class SubsysEntry {
+
+        /** modification time of the directory when it was loaded */
+        private final long modified;
+        /** pathway descriptors in the subsystem */
+        private final List<SubsystemPath> paths;
+
+        /**
+         * Create a loaded subsystem.
+         *
+         * @param modified	modification time of the directory
+         * @param paths		pathway descriptors in the subsystem
+         */
+        protected SubsysEntry(long modified, List<SubsystemPath> paths) {
+            this.modified = modified;
+            this.paths = paths;
+        }
+
+    }
+
+    /**
+     * This object holds the latency metrics for the service.  Each endpoint has a count of requests and
+     * failures and the total and maximum elapsed times, and the most recent requests are kept individually.
+     */
+    private static class Metrics {
+
+        /** map of endpoint names to request counts */
+        private final Map<String, long[]> endpoints;
+        /** most recent requests, oldest first */
+        private final Deque<JsonObject> recent;
+        /** next request number */
+        private final AtomicLong nextId;
+        /** index of the request count in an endpoint's counters */
+        private static final int COUNT = 0;
+        /** index of the failure count in an endpoint's counters */
+        private static final int FAILURES = 1;
+        /** index of the total elapsed time in an endpoint's counters */
+        private static final int TOTAL_MS = 2;
+        /** index of the maximum elapsed time in an endpoint's counters */
+        private static final int MAX_MS = 3;
+
+        /**
+         * Create an empty metrics object.
+         */
+        protected Metrics() {
+            this.endpoints = new TreeMap<String, long[]>();
+            this.recent = new ArrayDeque<JsonObject>(RECENT_SIZE);
+            this.nextId = new AtomicLong(1);
+        }
+
+        /**
+         * @return a new request number
+         */
+        protected long newRequest() {
+            return this.nextId.getAndIncrement();
+        }
+
+        /**
+         * Record a completed request.
+         *
+         * @param id			request number
+         * @param endpoint		name of the endpoint
+         * @param status		HTTP status code
+         * @param elapsed		number of milliseconds taken
+         */
+        protected synchronized void record(long id, String endpoint, int status, long elapsed) {
+            long[] counters = this.endpoints.computeIfAbsent(endpoint, x -> new long[4]);
+            counters[COUNT]++;
+            if (status >= 300)
+                counters[FAILURES]++;
+            counters[TOTAL_MS] += elapsed;
+            counters[MAX_MS] = Math.max(counters[MAX_MS], elapsed);
+            JsonObject request = new JsonObject();
+            request.put("id", id);
+            request.put("endpoint", endpoint);
+            request.put("status", status);
+            request.put("ms", elapsed);
+            if (this.recent.size() >= RECENT_SIZE)
+                this.recent.removeFirst();
+            this.recent.addLast(request);
+        }
+
+        /**
+         * @return a JSON object describing the metrics
+         */
+        protected synchronized JsonObject toJson() {
+            JsonObject retVal = new JsonObject();
+            JsonObject endpointList = new JsonObject();
+            for (Map.Entry<String, long[]> entry : this.endpoints.entrySet()) {
+                long[] counters = entry.getValue();
+                JsonObject endpoint = new JsonObject();
+                endpoint.put("count", counters[COUNT]);
+                endpoint.put("failures", counters[FAILURES]);
+                endpoint.put("total_ms", counters[TOTAL_MS]);
+                endpoint.put("mean_ms", (counters[COUNT] == 0 ? 0.0 : (double) counters[TOTAL_MS] / counters[COUNT]));
+                endpoint.put("max_ms", counters[MAX_MS]);
+                endpointList.put(entry.getKey(), endpoint);
+            }
+            retVal.put("endpoints", endpointList);
+            retVal.put("recent", new JsonArray(this.recent));
+            return retVal;
+        }
+
+    }
+
+    /**
+     * This exception is thrown when a request cannot be answered.  It carries the HTTP status code
+     * for the response.
+     */
+    private static class RequestException extends Exception {
+
+        /** version number for serialization */
+        private static final long serialVersionUID = -2386719842157704853L;
+        /** HTTP status code */
+        private final int status;
+
+        /**
+         * Create a request exception.
+         *
+         * @param status	HTTP status code
+         * @param message	error message
+         */
+        protected RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+    }
+
+    /**
+     * This is the base class for the service endpoints.  It handles the timing, the metrics, and the
+     * error responses.
+     */
+    private abstract class Endpoint implements HttpHandler {
+
+        /** name of the endpoint */
+        private final String name;
+
+        /**
+         * Create an endpoint.
+         *
+         * @param name		name of the endpoint
+         */
+        protected Endpoint(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            long id = PathService.this.metrics.newRequest();
+            int status = 200;
+            String body;
+            try {
+                PathService.this.checkToken(exchange);
+                body = this.process(exchange);
+            } catch (RequestException e) {
+                status = e.status;
+                body = errorJson(e.getMessage());
+            } catch (JsonException | ParseFailureException | IllegalArgumentException | ClassCastException e) {
+                status = 400;
+                body = errorJson(e.toString());
+            } catch (Exception e) {
+                log.error("Error processing request {} to {}: {}", id, this.name, e.toString());
+                status = 500;
+                body = errorJson(e.toString());
+            }
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            PathService.this.metrics.record(id, this.name, status, elapsed);
+            log.info("Request {} to {} completed with status {} in {} ms.", id, this.name, status, elapsed);
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.getResponseHeaders().set("X-Elapsed-Ms", Long.toString(elapsed));
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream outStream = exchange.getResponseBody()) {
+                outStream.write(bytes);
+            }
+        }
+
+        /**
+         * Process a request.
+         *
+         * @param exchange	HTTP exchange for the request
+         *
+         * @return the response body
+         *
+         * @throws Exception
+         */
+        protected abstract String process(HttpExchange exchange) throws Exception;
+
+    }
+
+    /**
+     * This is the base class for endpoints that perform searches.  It parses the request, locks the
+     * model's flow modifiers in place, and runs the search.
+     */
+    private abstract class SearchEndpoint extends Endpoint {
+
+        /**
+         * Create a search endpoint.
+         *
+         * @param name		name of the endpoint
+         */
+        protected SearchEndpoint(String name) {
+            super(name);
+        }
+
+        @Override
+        protected String process(HttpExchange exchange) throws Exception {
+            if (! exchange.getRequestMethod().equalsIgnoreCase("POST"))
+                throw new RequestException(405, "Search requests must be posted.");
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType == null || ! contentType.trim().toLowerCase().startsWith("application/json"))
+                throw new RequestException(415, "Search requests must have a content type of application/json.");
+            String text;
+            try (InputStream inStream = exchange.getRequestBody()) {
+                text = new String(inStream.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            JsonObject json = (JsonObject) Jsoner.deserialize(text);
+            String modelName = (String) json.get("model");
+            if (modelName == null)
+                throw new RequestException(400, "No model specified.");
+            ModelEntry entry = PathService.this.getModel(PathService.this.checkPath(modelName));
+            // Get the flow modifiers.
+            ModifierList flowMods;
+            String flowName = (String) json.get("flow");
+            if (flowName == null)
+                flowMods = new ModifierList(Collections.emptyList());
+            else
+                flowMods = new ModifierList(PathService.this.checkPath(flowName));
+            String fingerprint = FlowFingerprint.of(flowMods);
+            // The request parses its starting pathway, so it is built only after the flow is locked in place.
+            IReactionNetwork network = entry.acquire(flowMods, fingerprint);
+            try {
+                Request request = new Request(entry, json, fingerprint);
+                request.network = network;
+                return this.search(request);
+            } finally {
+                entry.release();
+            }
+        }
+
+        /**
+         * Perform the search for a request.  The request's flow modifiers are locked in place.
+         *
+         * @param request	request to process
+         *
+         * @return the response body
+         *
+         * @throws Exception
+         */
+        protected abstract String search(Request request) throws Exception;
+
+    }
+
+    /**
+     * This object holds the parameters of a single search request, and acts as the controlling
+     * command processor for its path finder or subsystem builder.
+     */
+    private class Request implements PathFinder.IParms, SubsystemBuilder.IParms {
+
+        /** model being searched */
+        private final ModelEntry entry;
+        /** request parameters */
+        private final JsonObject parms;
+        /** compounds to process */
+        private final List<MetaCompound> compounds;
+        /** pathway cache for the request's flow scenario */
+        private final PathwayCache pathCache;
+        /** reaction network for the request's flow scenario */
+        private IReactionNetwork network;
+        /** starting pathway, or NULL if none was specified */
+        private final Pathway startPath;
+        /** subsystem directory, or NULL if none was specified */
+        private final File subsysDir;
+
+        /**
+         * Parse a request.
+         *
+         * @param entry			model being searched
+         * @param parms			request parameters
+         * @param fingerprint	fingerprint of the request's flow modifiers
+         *
+         * @throws RequestException
+         * @throws IOException
+         * @throws ParseFailureException
+         * @throws JsonException
+         */
+        protected Request(ModelEntry entry, JsonObject parms, String fingerprint)
+                throws RequestException, IOException, ParseFailureException, JsonException {
+            this.entry = entry;
+            this.parms = parms;
+            this.pathCache = entry.getCache(fingerprint);
+            JsonArray compoundList = (JsonArray) parms.get("compounds");
+            if (compoundList == null)
+                throw new RequestException(400, "No compounds specified.");
+            this.compounds = new ArrayList<MetaCompound>(compoundList.size());
+            for (Object id : compoundList) {
+                MetaCompound compound = entry.compoundMap.get(id.toString());
+                if (compound == null)
+                    throw new RequestException(400, "Compound " + id + " is not in the model.");
+                this.compounds.add(compound);
+            }
+            String startName = (String) parms.get("start");
+            if (startName == null)
+                this.startPath = null;
+            else synchronized (entry.model) {
+                this.startPath = new Pathway(PathService.this.checkPath(startName), entry.model);
+            }
+            String subsysName = (String) parms.get("subsys");
+            this.subsysDir = (subsysName == null ? null : PathService.this.checkPath(subsysName));
+        }
+
+        /**
+         * @return the value of a string parameter
+         *
+         * @param name		name of the parameter
+         * @param defValue	value to return if the parameter was not specified
+         */
+        protected String getString(String name, String defValue) {
+            Object retVal = this.parms.get(name);
+            return (retVal == null ? defValue : retVal.toString());
+        }
+
+        @Override
+        public List<MetaCompound> getCompounds() {
+            return this.compounds;
+        }
+
+        @Override
+        public MetaModel getModel() {
+            return this.entry.model;
+        }
+
+        @Override
+        public IReactionNetwork getNetwork() {
+            return this.network;
+        }
+
+        @Override
+        public PathwayCache getPathCache() {
+            return this.pathCache;
+        }
+
+        @Override
+        public Pathway getStartPathway() {
+            return this.startPath;
+        }
+
+        @Override
+        public Collection<SubsystemPath> getSubsysPathways() {
+            Collection<SubsystemPath> retVal = null;
+            if (this.subsysDir != null) {
+                try {
+                    retVal = this.entry.getSubsystem(this.subsysDir);
+                } catch (IOException | ParseFailureException | JsonException e) {
+                    log.error("Error loading subsystem {}: {}", this.subsysDir, e.toString());
+                }
+            }
+            return retVal;
+        }
+
+        @Override
+        public File getSubsysDirectory() {
+            return this.subsysDir;
+        }
+
+        @Override
+        public boolean getLoopFlag() {
+            return Boolean.parseBoolean(this.getString("loop", "false"));
+        }
+
+        @Override
+        public PathFinder.Engine getEngine() {
+            return PathFinder.Engine.valueOf(this.getString("engine", "MODEL").toUpperCase());
+        }
+
+        /**
+         * Only the shortest alternative is returned, so the others are just logged.
+         */
+        @Override
+        public void showAlternative(Pathway path, int rank) {
+            log.debug("Alternative pathway {} has {} reactions.", rank, path.size());
+        }
+
+        @Override
+        public void showProgress(double p) {
+        }
+
+        @Override
+        public void showStatus(String msg) {
+            log.debug("Status: {}", msg);
+        }
+
+        @Override
+        public void showCompleted() {
+        }
+
+    }
+
+    /**
+     * This endpoint finds a single pathway.
+     */
+    private class PathEndpoint extends SearchEndpoint {
+
+        protected PathEndpoint() {
+            super("path");
+        }
+
+        @Override
+        protected String search(Request request) throws Exception {
+            PathFinder.Type type = PathFinder.Type.valueOf(request.getString("type", "NORMAL").toUpperCase());
+            PathFinder finder = type.create(request);
+            String impossible = finder.findImpossibleLeg();
+            if (impossible != null)
+                throw new RequestException(404, impossible);
+            Pathway path = finder.computePath();
+            if (path == null)
+                throw new RequestException(404, "Could not find requested pathway.");
+            return pathJson(path);
+        }
+
+    }
+
+    /**
+     * This endpoint updates a subsystem.  A build uses a staging directory inside the subsystem directory,
+     * so only one build for a given subsystem directory can run at a time.
+     */
+    private class SubsysEndpoint extends SearchEndpoint {
+
+        protected SubsysEndpoint() {
+            super("subsys");
+        }
+
+        @Override
+        protected String search(Request request) throws Exception {
+            if (request.subsysDir == null)
+                throw new RequestException(400, "No subsystem directory specified.");
+            if (! request.subsysDir.isDirectory() && ! request.subsysDir.mkdirs())
+                throw new IOException("Could not create subsystem directory " + request.subsysDir + ".");
+            SubsystemBuilder.Type type = SubsystemBuilder.Type.valueOf(request.getString("type", "SIMPLE").toUpperCase());
+            Object subsysLock = PathService.this.subsysLocks.computeIfAbsent(request.subsysDir.getAbsolutePath(),
+                    x -> new Object());
+            synchronized (subsysLock) {
+                SubsystemBuilder builder = type.create(request);
+                builder.updateSubsystem();
+                // Return the pathways for the compounds that were processed.  For the simple builder, the
+                // first compound is the start, so it has no pathway.  The subsystem may be archived, so we
+                // read the pathways through a subsystem reader.
+                SubsystemReader reader = new SubsystemReader(request.subsysDir);
+                List<String> pathJsons = new ArrayList<String>(request.compounds.size());
+                for (MetaCompound compound : request.compounds) {
+                    byte[] text = reader.readText(compound.getId() + Pathway.FILE_EXT);
+                    if (text != null)
+                        pathJsons.add(new String(text, StandardCharsets.UTF_8));
+                }
+                return "[" + String.join(",\n", pathJsons) + "]";
+            }
+        }
+
+    }
+
+    /**
+     * This endpoint returns the latency metrics.
+     */
+    private class MetricsEndpoint extends Endpoint {
+
+        protected MetricsEndpoint() {
+            super("metrics");
+        }
+
+        @Override
+        protected String process(HttpExchange exchange) throws Exception {
+            JsonObject retVal = PathService.this.metrics.toJson();
+            synchronized (PathService.this.models) {
+                retVal.put("models", new JsonArray(PathService.this.models.keySet()));
+            }
+            return Jsoner.prettyPrint(retVal.toJson());
+        }
+
+    }
+
+    /**
+     * Create a path service.
+     *
+     * @param maxModels		maximum number of models to keep loaded
+     * @param token			access token required on every request
+     * @param roots			directories that may contain the files named in a request
+     *
+     * @throws IOException
+     */
+    public PathService(int maxModels, String token, Collection<File> roots) throws IOException {
+        this.models = new LinkedHashMap<String, FutureTask<ModelEntry>>(maxModels * 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FutureTask<ModelEntry>> eldest) {
+                boolean retVal = this.size() > maxModels;
+                if (retVal)
+                    log.info("Model {} released from the service.", eldest.getKey());
+                return retVal;
+            }
+        };
+        this.metrics = new Metrics();
+        this.subsysLocks = new ConcurrentHashMap<String, Object>();
+        this.token = token;
+        this.roots = new ArrayList<Path>(roots.size());
+        for (File root : roots)
+            this.roots.add(root.getCanonicalFile().toPath());
+    }
+
+    /**
+     * @return a new random access token
+     */
+    public static String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Insure a request carries the service's access token.
+     *
+     * @param exchange	HTTP exchange for the request
+     *
+     * @throws RequestException
+     */
+    private void checkToken(HttpExchange exchange) throws RequestException {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        byte[] expected = ("Bearer " + this.token).getBytes(StandardCharsets.UTF_8);
+        if (header == null || ! MessageDigest.isEqual(expected, header.trim().getBytes(StandardCharsets.UTF_8)))
+            throw new RequestException(401, "A valid access token is required.");
+    }
+
+    /**
+     * @return the file for a name in a request, which must be inside one of the service's root directories
+     *
+     * @param name		file name from the request
+     *
+     * @throws IOException
+     * @throws RequestException
+     */
+    private File checkPath(String name) throws IOException, RequestException {
+        File retVal = new File(name).getCanonicalFile();
+        Path path = retVal.toPath();
+        if (! this.roots.stream().anyMatch(x -> path.startsWith(x)))
+            throw new RequestException(403, name + " is not inside a directory served by this service.");
+        return retVal;
+    }
+
+    /**
+     * Get a loaded model, loading it if necessary.  Only one thread loads a given model, and other
+     * requests for it wait for the load to finish.
+     *
+     * @param modelDir		model directory
+     *
+     * @return the loaded model
+     *
+     * @throws IOException
+     * @throws RequestException
+     */
+    private ModelEntry getModel(File modelDir) throws IOException, RequestException {
+        if (! ModelLoader.isModelDir(modelDir))
+            throw new RequestException(404, modelDir + " does not have a base.gto and a model.json.");
+        String key = modelDir.getAbsolutePath();
+        FutureTask<ModelEntry> task;
+        boolean owner = false;
+        synchronized (this.models) {
+            task = this.models.get(key);
+            if (task == null) {
+                task = new FutureTask<ModelEntry>(() -> {
+                    ModelLoader loader = new ModelLoader(modelDir, new LogReporter());
+                    MetaModel model = loader.load();
+                    return new ModelEntry(loader, model);
+                });
+                this.models.put(key, task);
+                owner = true;
+            }
+        }
+        if (owner)
+            task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw new InterruptException();
+        } catch (ExecutionException e) {
+            // Insure the failed load is tried again next time.
+            synchronized (this.models) {
+                this.models.remove(key, task);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            else
+                throw new IOException("Error loading model: " + cause.toString(), cause);
+        }
+    }
+
+    /**
+     * Load a model into the service before any requests arrive.
+     *
+     * @param modelDir		model directory
+     *
+     * @throws IOException
+     */
+    public void preload(File modelDir) throws IOException {
+        try {
+            ModelEntry entry = this.getModel(modelDir);
+            log.info("Model {} loaded from {}.", entry.model, modelDir);
+        } catch (RequestException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Start the service.
+     *
+     * @param port		port number on the loopback interface
+     * @param nThreads	number of request worker threads
+     *
+     * @throws IOException
+     */
+    public void start(int port, int nThreads) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/path", this.new PathEndpoint());
+        this.server.createContext("/subsys", this.new SubsysEndpoint());
+        this.server.createContext("/metrics", this.new MetricsEndpoint());
+        this.workers = Executors.newFixedThreadPool(nThreads, r -> {
+            Thread retVal = new Thread(r, "PathService");
+            retVal.setDaemon(true);
+            return retVal;
+        });
+        this.server.setExecutor(this.workers);
+        this.server.start();
+        log.info("Path service listening on port {} with {} threads.", port, nThreads);
+    }
+
+    /**
+     * Stop the service.
+     */
+    public void stop() {
+        if (this.server != null) {
+            this.server.stop(1);
+            this.workers.shutdownNow();
+            this.server = null;
+        }
+    }
+
+    /**
+     * Run the service until the process is terminated.
+     *
+     * @param port		port number on the loopback interface
+     * @param nThreads	number of request worker threads
+     *
+     * @throws IOException
+     */
+    public void serve(int port, int nThreads) throws IOException {
+        this.start(port, nThreads);
+        CountDownLatch done = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            this.stop();
+            done.countDown();
+        }));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            this.stop();
+        }
+    }
+
+    /**
+     * @return the JSON for a pathway, in the format written by Pathway.save
+     *
+     * @param path		pathway to convert
+     *
+     * @throws IOException
+     */
+    private static String pathJson(Pathway path) throws IOException {
+        Path tempFile = Files.createTempFile("path", Pathway.FILE_EXT);
+        try {
+            path.save(tempFile.toFile());
+            return Files.readString(tempFile, StandardCharsets.UTF_8);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * @return the JSON for an error response
+     *
+     * @param message	error message
+     */
+    private static String errorJson(String message) {
+        JsonObject retVal = new JsonObject();
+        retVal.put("error", message);
+        return retVal.toJson();
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ *
+ */
+package org.theseed.meta.jfx;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.meta.storage.SubsystemPath;
+import org.theseed.meta.storage.SubsystemReader;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.shared.meta.IProgressReporter;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+
+import javafx.concurrent.Task;
+
+/**
+ * This object loads the pathway descriptors of a subsystem.  For an archived subsystem, the descriptors come
+ * from the archive index and no pathway is parsed until it is used.  For a directory of pathway files, each
+ * file must be parsed.  The pathways are read by a single worker thread, so that a large subsystem can be
+ * loaded in the background while the controlling reporter displays progress.  A pathway file can only be
+ * read, parsed, and resolved against the model in one operation, and that has to be done while holding the
+ * model's lock, so more workers would only wait on each other.  The reporter's progress method is polled
+ * while we wait, so a reporter that throws an InterruptException will abort the load.
+ *
+ * As the pathways are parsed, they are passed to a client-supplied sink in batches.  Each batch is
+ * sorted from shortest to longest, but the batches themselves are in no particular order.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SubsystemLoader {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SubsystemLoader.class);
+    /** subsystem directory being loaded */
+    private File subDir;
+    /** model containing the pathways' reactions */
+    private MetaModel model;
+    /** controlling progress reporter */
+    private IProgressReporter reporter;
+    /** receiver for batches of pathway descriptors */
+    private Consumer<List<SubsystemPath>> sink;
+    /** number of pathways loaded */
+    private int count;
+    /** number of milliseconds to wait between progress polls */
+    private static final long POLL_INTERVAL = 100;
+
+    /**
+     * Construct a subsystem loader for a specified subsystem directory.
+     *
+     * @param subDir		subsystem directory to load
+     * @param model			model containing the pathways' reactions
+     * @param reporter		progress reporter for the load
+     * @param sink			receiver for batches of pathway descriptors (called from the loading thread)
+     */
+    public SubsystemLoader(File subDir, MetaModel model, IProgressReporter reporter, Consumer<List<SubsystemPath>> sink) {
+        this.subDir = subDir;
+        this.model = model;
+        this.reporter = reporter;
+        this.sink = sink;
+        this.count = 0;
+    }
+
+    /**
+     * Load the subsystem's pathways.
+     *
+     * @return the number of pathways loaded
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     * @throws JsonException
+     */
+    public int load() throws IOException, ParseFailureException, JsonException {
+        long start = System.currentTimeMillis();
+        SubsystemReader reader = new SubsystemReader(this.subDir);
+        final int n = reader.size();
+        this.count = 0;
+        if (n > 0) {
+            this.reporter.showStatus(String.format("Loading %d pathways from %s.", n, this.subDir.getName()));
+            ExecutorService workers = Executors.newSingleThreadExecutor(r -> {
+                Thread retVal = new Thread(r, "SubsystemLoader");
+                retVal.setDaemon(true);
+                return retVal;
+            });
+            try {
+                CompletionService<SubsystemPath> tasks = new ExecutorCompletionService<SubsystemPath>(workers);
+                for (int i = 0; i < n; i++) {
+                    final int idx = i;
+                    tasks.submit(() -> reader.read(idx, this.model));
+                }
+                while (this.count < n) {
+                    // Collect everything that has finished since the last poll into a single batch.
+                    List<SubsystemPath> batch = new ArrayList<SubsystemPath>();
+                    Future<SubsystemPath> result = tasks.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    while (result != null) {
+                        batch.add(result.get());
+                        result = tasks.poll();
+                    }
+                    if (! batch.isEmpty()) {
+                        Collections.sort(batch);
+                        this.sink.accept(batch);
+                        this.count += batch.size();
+                    }
+                    this.reporter.showProgress((double) this.count / n);
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                else if (cause instanceof ParseFailureException)
+                    throw (ParseFailureException) cause;
+                else if (cause instanceof JsonException)
+                    throw (JsonException) cause;
+                else if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                else
+                    throw new IOException("Error loading subsystem pathway: " + cause.toString(), cause);
+            } finally {
+                // If we are aborting, this abandons the remaining pathways.
+                workers.shutdownNow();
+            }
+        }
+        log.info("{} pathways loaded from subsystem {} in {} ms.", this.count, this.subDir,
+                System.currentTimeMillis() - start);
+        return this.count;
+    }
+
+    /**
+     * @return the subsystem directory being loaded
+     */
+    public File getSubsysDir() {
+        return this.subDir;
+    }
+
+    /**
+     * @return the number of pathways loaded
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * This object runs the subsystem load in the background.  Note that the status message should not be
+     * overridden after it is done, since it may contain error information.
+     */
+    public class Runner extends Task<Boolean> {
+
+        /** TRUE if the load worked, else FALSE */
+        private boolean successFlag;
+
+        @Override
+        protected Boolean call() throws Exception {
+            boolean retVal = false;
+            try {
+                SubsystemLoader.this.load();
+                retVal = true;
+            } catch (Exception e) {
+                SubsystemLoader.this.reporter.showStatus("Error: " + e.toString());
+            }
+            // Save the result.
+            this.successFlag = retVal;
+            // Denote this task is done.
+            SubsystemLoader.this.reporter.showCompleted();
+            return retVal;
+        }
+
+        /**
+         * @return TRUE for success, FALSE for failure
+         */
+        public boolean getResult() {
+            return this.successFlag;
+        }
+
+    }
+
+}
@@ -0,0 +1,82 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This is the base class for reaction network views.  It holds the flow fingerprint and the search
+ * structures derived from the network.  The networks are immutable, so each index is built the first
+ * time it is needed and kept for the life of the network.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public abstract class BaseReactionNetwork implements IReactionNetwork {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(BaseReactionNetwork.class);
+    /** fingerprint of the flow modifiers that produced this network */
+    private final String fingerprint;
+    /** compact graph, or NULL if it has not been built */
+    private CompactGraph graph;
+    /** landmark distance index, or NULL if it has not been built */
+    private LandmarkIndex landmarks;
+    /** reachability index, or NULL if it has not been built */
+    private ReachabilityIndex reachability;
+
+    /**
+     * Construct a reaction network view.
+     *
+     * @param fingerprint	fingerprint of the flow modifiers that produced the network
+     */
+    protected BaseReactionNetwork(String fingerprint) {
+        this.fingerprint = fingerprint;
+        this.graph = null;
+        this.landmarks = null;
+        this.reachability = null;
+    }
+
+    @Override
+    public String getFingerprint() {
+        return this.fingerprint;
+    }
+
+    @Override
+    public synchronized CompactGraph getCompactGraph() {
+        if (this.graph == null) {
+            long start = System.currentTimeMillis();
+            this.graph = new CompactGraph(this);
+            log.info("Compact graph with {} compounds and {} steps built in {} ms.", this.graph.size(),
+                    this.graph.getStepCount(), System.currentTimeMillis() - start);
+        }
+        return this.graph;
+    }
+
+    @Override
+    public synchronized LandmarkIndex getLandmarks() {
+        if (this.landmarks == null) {
+            CompactGraph compact = this.getCompactGraph();
+            long start = System.currentTimeMillis();
+            this.landmarks = new LandmarkIndex(compact, LandmarkIndex.DEFAULT_COUNT);
+            log.info("Landmark index built in {} ms.", System.currentTimeMillis() - start);
+        }
+        return this.landmarks;
+    }
+
+    @Override
+    public synchronized ReachabilityIndex getReachability() {
+        if (this.reachability == null) {
+            CompactGraph compact = this.getCompactGraph();
+            long start = System.currentTimeMillis();
+            this.reachability = new ReachabilityIndex(compact);
+            log.info("Reachability index with {} components built in {} ms.", this.reachability.getComponentCount(),
+                    System.currentTimeMillis() - start);
+        }
+        return this.reachability;
+    }
+
+}
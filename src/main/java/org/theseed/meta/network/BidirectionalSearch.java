@@ -0,0 +1,140 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This search object finds the shortest pathway between two compounds by expanding from both ends
+ * at once.  At each stage, the smaller frontier is expanded by one full level.  When the two searches
+ * meet, the best meeting point found gives an upper bound on the pathway length, and the search stops
+ * as soon as no undiscovered pathway could be shorter.
+ *
+ * The landmark index of the network supplies a lower bound on the remaining distance from each newly
+ * reached compound.  Once a meeting point has been found, compounds that cannot lead to a shorter
+ * pathway are not expanded.  This keeps the frontiers small around hub metabolites.
+ *
+ * Like the breadth-first search, this finds a pathway with the fewest possible reactions, so it is
+ * never longer than the pathway found by the model.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class BidirectionalSearch extends NetworkSearch {
+
+    // FIELDS
+    /** landmark index for distance bounds */
+    private final LandmarkIndex landmarks;
+
+    /**
+     * Create a bidirectional search object for a reaction network.
+     *
+     * @param network		network to search
+     */
+    public BidirectionalSearch(IReactionNetwork network) {
+        super(network);
+        this.landmarks = network.getLandmarks();
+    }
+
+    @Override
+    protected List<Step> search(int s, int g) {
+        List<Step> retVal = null;
+        final CompactGraph graph = this.getGraph();
+        final int n = graph.size();
+        // These hold the step that reached each compound and its distance in each direction.
+        int[] fwdBy = new int[n];
+        int[] bwdBy = new int[n];
+        Arrays.fill(fwdBy, UNSEEN);
+        Arrays.fill(bwdBy, UNSEEN);
+        int[] fwdDist = new int[n];
+        int[] bwdDist = new int[n];
+        fwdBy[s] = ROOT;
+        bwdBy[g] = ROOT;
+        // The frontiers are kept in arrays.  Each direction has a current and a next array.
+        int[] fwdFrontier = new int[n];
+        int[] fwdNext = new int[n];
+        int[] bwdFrontier = new int[n];
+        int[] bwdNext = new int[n];
+        fwdFrontier[0] = s;
+        bwdFrontier[0] = g;
+        int fwdCount = 1;
+        int bwdCount = 1;
+        int fwdLevel = 0;
+        int bwdLevel = 0;
+        // This is the length of the best pathway found and the compound where the searches met.
+        int best = Integer.MAX_VALUE;
+        int meet = -1;
+        // Every pathway not yet found is at least fwdLevel + bwdLevel + 1 long.
+        while (fwdCount > 0 && bwdCount > 0 && best > fwdLevel + bwdLevel + 1) {
+            int nextCount = 0;
+            if (fwdCount <= bwdCount) {
+                // Expand forward.
+                final int dist = fwdLevel + 1;
+                for (int i = 0; i < fwdCount; i++) {
+                    final int c = fwdFrontier[i];
+                    this.countExpansion();
+                    final int end = graph.fwdEnd(c);
+                    for (int pos = graph.fwdStart(c); pos < end; pos++) {
+                        int step = graph.fwdStep(pos);
+                        int o = graph.getOutput(step);
+                        if (fwdBy[o] == UNSEEN && (o == g || ! graph.isCommon(o))) {
+                            fwdBy[o] = step;
+                            fwdDist[o] = dist;
+                            if (bwdBy[o] != UNSEEN && dist + bwdDist[o] < best) {
+                                best = dist + bwdDist[o];
+                                meet = o;
+                            }
+                            if (dist + this.landmarks.lowerBound(o, g) < best)
+                                fwdNext[nextCount++] = o;
+                        }
+                    }
+                }
+                int[] temp = fwdFrontier;
+                fwdFrontier = fwdNext;
+                fwdNext = temp;
+                fwdCount = nextCount;
+                fwdLevel = dist;
+            } else {
+                // Expand backward.
+                final int dist = bwdLevel + 1;
+                for (int i = 0; i < bwdCount; i++) {
+                    final int c = bwdFrontier[i];
+                    this.countExpansion();
+                    final int end = graph.bwdEnd(c);
+                    for (int pos = graph.bwdStart(c); pos < end; pos++) {
+                        int step = graph.bwdStep(pos);
+                        int x = graph.getInput(step);
+                        if (bwdBy[x] == UNSEEN && (x == s || ! graph.isCommon(x))) {
+                            bwdBy[x] = step;
+                            bwdDist[x] = dist;
+                            if (fwdBy[x] != UNSEEN && dist + fwdDist[x] < best) {
+                                best = dist + fwdDist[x];
+                                meet = x;
+                            }
+                            if (dist + this.landmarks.lowerBound(s, x) < best)
+                                bwdNext[nextCount++] = x;
+                        }
+                    }
+                }
+                int[] temp = bwdFrontier;
+                bwdFrontier = bwdNext;
+                bwdNext = temp;
+                bwdCount = nextCount;
+                bwdLevel = dist;
+            }
+        }
+        if (meet >= 0) {
+            // Assemble the pathway from the two halves.
+            retVal = this.traceBack(fwdBy, meet);
+            int step = bwdBy[meet];
+            while (step >= 0) {
+                retVal.add(graph.getStep(step));
+                step = bwdBy[graph.getOutput(step)];
+            }
+        }
+        return retVal;
+    }
+
+}
@@ -0,0 +1,241 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact graph is a primitive-array form of a reaction network, used by the search engines.  Each
+ * compound is assigned an integer index, and each step is assigned an integer index.  The consuming
+ * steps of the compounds are stored in compressed-sparse-row form:  the steps leaving compound i are
+ * at positions fwdStart[i] through fwdStart[i+1]-1 of the forward arrays, which give the index of
+ * the output compound and of the step.  The producing steps are stored the same way in the backward
+ * arrays.  The step objects are only needed when the search result is translated back to a pathway.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class CompactGraph {
+
+    // FIELDS
+    /** compound IDs, by index */
+    private final String[] compounds;
+    /** map of compound IDs to indices */
+    private final Map<String, Integer> compoundMap;
+    /** common-compound flags, by index */
+    private final boolean[] common;
+    /** steps, by index */
+    private final Step[] steps;
+    /** input compound index of each step */
+    private final int[] stepInput;
+    /** output compound index of each step */
+    private final int[] stepOutput;
+    /** starting position of each compound's consuming steps */
+    private final int[] fwdStart;
+    /** consuming step indices, grouped by input compound */
+    private final int[] fwdStep;
+    /** starting position of each compound's producing steps */
+    private final int[] bwdStart;
+    /** producing step indices, grouped by output compound */
+    private final int[] bwdStep;
+
+    /**
+     * Build a compact graph from a reaction network.
+     *
+     * @param network	network to compress
+     */
+    public CompactGraph(IReactionNetwork network) {
+        // Assign the compound and step indices.
+        this.compoundMap = new HashMap<String, Integer>();
+        List<String> compoundList = new ArrayList<String>();
+        List<Step> stepList = new ArrayList<Step>();
+        for (String compound : network.getCompounds()) {
+            for (Step step : network.getSteps(compound)) {
+                stepList.add(step);
+                this.indexOf(step.getInput(), compoundList);
+                this.indexOf(step.getOutput(), compoundList);
+            }
+        }
+        final int n = compoundList.size();
+        final int m = stepList.size();
+        this.compounds = compoundList.toArray(new String[n]);
+        this.steps = stepList.toArray(new Step[m]);
+        this.common = new boolean[n];
+        for (int i = 0; i < n; i++)
+            this.common[i] = network.isCommon(this.compounds[i]);
+        this.stepInput = new int[m];
+        this.stepOutput = new int[m];
+        for (int s = 0; s < m; s++) {
+            this.stepInput[s] = this.compoundMap.get(this.steps[s].getInput());
+            this.stepOutput[s] = this.compoundMap.get(this.steps[s].getOutput());
+        }
+        // Build the two adjacency structures.
+        this.fwdStart = new int[n + 1];
+        this.fwdStep = new int[m];
+        fill(this.stepInput, this.fwdStart, this.fwdStep);
+        this.bwdStart = new int[n + 1];
+        this.bwdStep = new int[m];
+        fill(this.stepOutput, this.bwdStart, this.bwdStep);
+    }
+
+    /**
+     * @return the index of a compound, assigning a new one if necessary
+     *
+     * @param compound		BiGG ID of the compound
+     * @param compoundList	list of compounds, by index
+     */
+    private int indexOf(String compound, List<String> compoundList) {
+        Integer retVal = this.compoundMap.get(compound);
+        if (retVal == null) {
+            retVal = compoundList.size();
+            compoundList.add(compound);
+            this.compoundMap.put(compound, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * Fill in a compressed-sparse-row adjacency structure using a counting sort.
+     *
+     * @param keys		compound index for each step
+     * @param start		array to contain the starting position for each compound
+     * @param edges		array to contain the step indices grouped by compound
+     */
+    private static void fill(int[] keys, int[] start, int[] edges) {
+        for (int key : keys)
+            start[key + 1]++;
+        for (int i = 1; i < start.length; i++)
+            start[i] += start[i - 1];
+        int[] next = start.clone();
+        for (int s = 0; s < keys.length; s++)
+            edges[next[keys[s]]++] = s;
+    }
+
+    /**
+     * @return the index of a compound, or -1 if it is not in the graph
+     *
+     * @param compound		BiGG ID of the compound
+     */
+    public int getIndex(String compound) {
+        Integer retVal = this.compoundMap.get(compound);
+        return (retVal == null ? -1 : retVal);
+    }
+
+    /**
+     * @return the BiGG ID of the compound with the specified index
+     *
+     * @param idx		index of the desired compound
+     */
+    public String getCompound(int idx) {
+        return this.compounds[idx];
+    }
+
+    /**
+     * @return TRUE if the compound with the specified index is common
+     *
+     * @param idx		index of the compound
+     */
+    public boolean isCommon(int idx) {
+        return this.common[idx];
+    }
+
+    /**
+     * @return the number of compounds in the graph
+     */
+    public int size() {
+        return this.compounds.length;
+    }
+
+    /**
+     * @return the number of steps in the graph
+     */
+    public int getStepCount() {
+        return this.steps.length;
+    }
+
+    /**
+     * @return the step with the specified index
+     *
+     * @param s		index of the desired step
+     */
+    public Step getStep(int s) {
+        return this.steps[s];
+    }
+
+    /**
+     * @return the input compound index of the specified step
+     *
+     * @param s		index of the step
+     */
+    public int getInput(int s) {
+        return this.stepInput[s];
+    }
+
+    /**
+     * @return the output compound index of the specified step
+     *
+     * @param s		index of the step
+     */
+    public int getOutput(int s) {
+        return this.stepOutput[s];
+    }
+
+    /**
+     * @return the position of the first consuming step of a compound in the forward step array
+     *
+     * @param idx		index of the compound
+     */
+    public int fwdStart(int idx) {
+        return this.fwdStart[idx];
+    }
+
+    /**
+     * @return the position past the last consuming step of a compound in the forward step array
+     *
+     * @param idx		index of the compound
+     */
+    public int fwdEnd(int idx) {
+        return this.fwdStart[idx + 1];
+    }
+
+    /**
+     * @return the step index at the specified position in the forward step array
+     *
+     * @param pos		position in the array
+     */
+    public int fwdStep(int pos) {
+        return this.fwdStep[pos];
+    }
+
+    /**
+     * @return the position of the first producing step of a compound in the backward step array
+     *
+     * @param idx		index of the compound
+     */
+    public int bwdStart(int idx) {
+        return this.bwdStart[idx];
+    }
+
+    /**
+     * @return the position past the last producing step of a compound in the backward step array
+     *
+     * @param idx		index of the compound
+     */
+    public int bwdEnd(int idx) {
+        return this.bwdStart[idx + 1];
+    }
+
+    /**
+     * @return the step index at the specified position in the backward step array
+     *
+     * @param pos		position in the array
+     */
+    public int bwdStep(int pos) {
+        return this.bwdStep[pos];
+    }
+
+}
@@ -0,0 +1,52 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.theseed.metabolism.mods.Modifier;
+import org.theseed.metabolism.mods.ModifierList;
+
+/**
+ * This class computes a fingerprint for a flow modifier list.  Two modifier lists with the same
+ * active modifiers in the same order will have the same fingerprint, so the fingerprint can be
+ * used to tell whether or not the reaction network needs to be rebuilt, and to key results that
+ * depend on the network.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class FlowFingerprint {
+
+    /**
+     * Compute the fingerprint of a modifier list.  Only the active modifiers are included.
+     *
+     * @param modList	modifier list to fingerprint
+     *
+     * @return a hexadecimal fingerprint string
+     */
+    public static String of(ModifierList modList) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required in every Java implementation.
+            throw new IllegalStateException(e);
+        }
+        for (Modifier mod : modList) {
+            if (mod.isActive()) {
+                String line = mod.getCommand() + "\t" + mod.getParms() + "\n";
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        byte[] hash = digest.digest();
+        StringBuilder retVal = new StringBuilder(hash.length * 2);
+        for (byte b : hash)
+            retVal.append(String.format("%02x", b));
+        return retVal.toString();
+    }
+
+}
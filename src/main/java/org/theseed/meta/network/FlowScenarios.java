@@ -0,0 +1,111 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.mods.ModifierList;
+
+/**
+ * This object holds the reaction networks for the flow scenarios applied to a single model.  The
+ * model's unmodified network is captured once as the base, and each scenario is stored as an
+ * overlay on the base keyed by the fingerprint of its flow modifiers.  A limited number of the
+ * most recently used scenarios are kept.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class FlowScenarios {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(FlowScenarios.class);
+    /** model whose scenarios are being held */
+    private final MetaModel model;
+    /** base network for the model */
+    private final ReactionNetwork base;
+    /** map of fingerprints to scenario overlays, in least-recently-used order */
+    private final Map<String, NetworkOverlay> overlays;
+    /** maximum number of scenarios to keep */
+    public static final int MAX_SCENARIOS = 8;
+
+    /**
+     * Capture the base network of a model.  This removes any flow modifiers from the model and
+     * rebuilds its reaction network.
+     *
+     * @param model		model whose scenarios are to be held
+     */
+    public FlowScenarios(MetaModel model) {
+        this.model = model;
+        ModifierList noMods = new ModifierList(Collections.emptyList());
+        noMods.apply(model);
+        model.buildReactionNetwork();
+        long start = System.currentTimeMillis();
+        this.base = ReactionNetwork.capture(model, FlowFingerprint.of(noMods));
+        log.info("Base reaction network captured in {} ms.", System.currentTimeMillis() - start);
+        this.overlays = new LinkedHashMap<String, NetworkOverlay>(MAX_SCENARIOS * 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, NetworkOverlay> eldest) {
+                return this.size() > MAX_SCENARIOS;
+            }
+        };
+    }
+
+    /**
+     * @return the network for the specified scenario, or NULL if it is not being held
+     *
+     * @param fingerprint	fingerprint of the scenario's flow modifiers
+     */
+    public synchronized IReactionNetwork find(String fingerprint) {
+        IReactionNetwork retVal;
+        if (fingerprint.equals(this.base.getFingerprint()))
+            retVal = this.base;
+        else
+            retVal = this.overlays.get(fingerprint);
+        return retVal;
+    }
+
+    /**
+     * Get the network for the scenario currently applied to the model.  If the scenario is not
+     * being held, an overlay is derived from the model and saved.
+     *
+     * @param fingerprint	fingerprint of the flow modifiers currently applied to the model
+     *
+     * @return the network for the current scenario
+     */
+    public synchronized IReactionNetwork getCurrent(String fingerprint) {
+        IReactionNetwork retVal = this.find(fingerprint);
+        if (retVal == null) {
+            long start = System.currentTimeMillis();
+            NetworkOverlay overlay = NetworkOverlay.derive(this.base, this.model, fingerprint);
+            log.info("Flow scenario overlay derived in {} ms:  {} steps suppressed, {} added.",
+                    System.currentTimeMillis() - start, overlay.getRemovedCount(), overlay.getAddedCount());
+            this.overlays.put(fingerprint, overlay);
+            retVal = overlay;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the base network
+     */
+    public ReactionNetwork getBase() {
+        return this.base;
+    }
+
+    /**
+     * @return the number of scenario overlays being held
+     */
+    public synchronized int size() {
+        return this.overlays.size();
+    }
+
+}
@@ -0,0 +1,65 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This interface describes a read-only view of a model's reaction network.  The network is presented
+ * as a set of steps leading out of each compound.  Each step represents the use of a single reaction
+ * to convert the input compound to a single output compound.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public interface IReactionNetwork {
+
+    /**
+     * @return the steps that consume the specified compound (empty if there are none)
+     *
+     * @param compound		BiGG ID of the input compound
+     */
+    public List<Step> getSteps(String compound);
+
+    /**
+     * @return the steps that produce the specified compound (empty if there are none)
+     *
+     * @param compound		BiGG ID of the output compound
+     */
+    public List<Step> getProducingSteps(String compound);
+
+    /**
+     * @return the set of compounds that have consuming steps
+     */
+    public Set<String> getCompounds();
+
+    /**
+     * @return TRUE if the specified compound is a common compound that should not be traversed
+     *
+     * @param compound		BiGG ID of the compound to check
+     */
+    public boolean isCommon(String compound);
+
+    /**
+     * @return the fingerprint of the flow modifiers that produced this network
+     */
+    public String getFingerprint();
+
+    /**
+     * @return the compact graph for this network
+     */
+    public CompactGraph getCompactGraph();
+
+    /**
+     * @return the landmark distance index for this network
+     */
+    public LandmarkIndex getLandmarks();
+
+    /**
+     * @return the reachability index for this network
+     */
+    public ReachabilityIndex getReachability();
+
+}
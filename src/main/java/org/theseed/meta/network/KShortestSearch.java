@@ -0,0 +1,286 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.theseed.metabolism.Pathway;
+
+/**
+ * This search object finds the K shortest distinct pathways through a list of compounds, using Yen's
+ * algorithm.  Each pathway after the first is a deviation from one of the pathways already found:  it
+ * shares a prefix (the root) with an earlier pathway, and then takes a shortest route (the spur) from
+ * the end of the root that avoids the next step of every earlier pathway with the same root.
+ *
+ * To handle the intermediate compounds, the search runs on a layered form of the compact graph.  A
+ * state is a compound plus the number of listed compounds already passed.  Reaching the next listed
+ * compound advances to the next layer, and the search ends when the last listed compound is reached
+ * in the last layer.  As with the other searches, common compounds are never intermediates, though a
+ * listed compound can be common.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class KShortestSearch extends NetworkSearch {
+
+    // FIELDS
+    /** indices of the listed compounds */
+    private int[] waypoints;
+    /** number of compounds in the graph */
+    private int nCompounds;
+
+    /**
+     * This object describes a pathway found by the search, as a list of step indices and the states
+     * visited.
+     */
+    private static class Route implements Comparable<Route> {
+
+        /** step indices, in order */
+        private final int[] steps;
+        /** states visited, in order (one more than the number of steps) */
+        private final int[] states;
+
+        /**
+         * Create a route.
+         *
+         * @param steps		step indices, in order
+         * @param states	states visited, in order
+         */
+        protected Route(int[] steps, int[] states) {
+            this.steps = steps;
+            this.states = states;
+        }
+
+        /**
+         * @return TRUE if this route starts with the specified number of steps from another route
+         *
+         * @param other		other route to check
+         * @param len		number of steps in the prefix
+         */
+        protected boolean sharesRoot(Route other, int len) {
+            return this.steps.length >= len && Arrays.equals(this.steps, 0, len, other.steps, 0, len);
+        }
+
+        @Override
+        public int compareTo(Route o) {
+            int retVal = Integer.compare(this.steps.length, o.steps.length);
+            if (retVal == 0)
+                retVal = Arrays.compare(this.steps, o.steps);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Create a K-shortest search object for a reaction network.
+     *
+     * @param network		network to search
+     */
+    public KShortestSearch(IReactionNetwork network) {
+        super(network);
+    }
+
+    /**
+     * Find the K shortest pathways through a list of compounds.  The pathways are passed to a consumer
+     * as they are found, in order of increasing length.
+     *
+     * @param compounds		BiGG IDs of the compounds through which the pathways must pass (at least two)
+     * @param k				maximum number of pathways to find
+     * @param consumer		consumer to receive each pathway found
+     *
+     * @return the number of pathways found
+     */
+    public int findPaths(List<String> compounds, int k, Consumer<Pathway> consumer) {
+        final CompactGraph graph = this.getGraph();
+        this.nCompounds = graph.size();
+        // Convert the waypoints.  If any is missing from the graph, there are no pathways.
+        this.waypoints = new int[compounds.size()];
+        boolean ok = true;
+        for (int i = 0; ok && i < this.waypoints.length; i++) {
+            this.waypoints[i] = graph.getIndex(compounds.get(i));
+            ok = (this.waypoints[i] >= 0);
+        }
+        int retVal = 0;
+        if (ok) {
+            final int nStates = this.nCompounds * (this.waypoints.length - 1) + this.nCompounds;
+            boolean[] blocked = new boolean[nStates];
+            List<Route> found = new ArrayList<Route>(k);
+            PriorityQueue<Route> candidates = new PriorityQueue<Route>();
+            Set<List<Integer>> seen = new HashSet<List<Integer>>();
+            Route next = this.spur(this.startState(), blocked, new int[0], new int[] { this.startState() });
+            while (next != null && retVal < k) {
+                found.add(next);
+                consumer.accept(this.toPathway(compounds.get(0), next));
+                retVal++;
+                if (retVal < k) {
+                    // Generate the deviations from the newest route.
+                    for (int i = 0; i < next.steps.length; i++) {
+                        Arrays.fill(blocked, false);
+                        // Block the root states (other than the spur state).
+                        for (int j = 0; j < i; j++)
+                            blocked[next.states[j]] = true;
+                        // Block the next step of each route sharing this root.  We mark the spur state
+                        // with the steps to avoid.
+                        Set<Integer> avoid = new HashSet<Integer>();
+                        for (Route other : found) {
+                            if (other.sharesRoot(next, i))
+                                avoid.add(other.steps[i]);
+                        }
+                        int[] root = Arrays.copyOf(next.steps, i);
+                        int[] rootStates = Arrays.copyOf(next.states, i + 1);
+                        Route candidate = this.spur(next.states[i], blocked, root, rootStates, avoid);
+                        if (candidate != null && seen.add(asList(candidate.steps)))
+                            candidates.add(candidate);
+                    }
+                }
+                next = candidates.poll();
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the starting state
+     */
+    private int startState() {
+        return this.waypoints[0];
+    }
+
+    /**
+     * @return TRUE if the specified state is the goal state
+     *
+     * @param state		state to check
+     */
+    private boolean isGoal(int state) {
+        final int last = this.waypoints.length - 1;
+        return state == last * this.nCompounds + this.waypoints[last];
+    }
+
+    /**
+     * Find a shortest spur route from a state with no steps to avoid.
+     *
+     * @param from			state from which to start
+     * @param blocked		array of flags for the states that may not be used
+     * @param root			steps in the root route
+     * @param rootStates	states in the root route (ending with the spur state)
+     *
+     * @return the full route, or NULL if there is no spur
+     */
+    private Route spur(int from, boolean[] blocked, int[] root, int[] rootStates) {
+        return this.spur(from, blocked, root, rootStates, Set.of());
+    }
+
+    /**
+     * Find a shortest spur route from a state to the goal state, and attach it to a root route.
+     *
+     * @param from			state from which to start
+     * @param blocked		array of flags for the states that may not be used
+     * @param root			steps in the root route
+     * @param rootStates	states in the root route (ending with the spur state)
+     * @param avoid			indices of steps that may not be taken from the spur state
+     *
+     * @return the full route, or NULL if there is no spur
+     */
+    private Route spur(int from, boolean[] blocked, int[] root, int[] rootStates, Set<Integer> avoid) {
+        final CompactGraph graph = this.getGraph();
+        final int n = this.nCompounds;
+        final int nStates = blocked.length;
+        Route retVal = null;
+        if (this.isGoal(from))
+            retVal = new Route(root, rootStates);
+        else {
+            int[] reachedBy = new int[nStates];
+            Arrays.fill(reachedBy, UNSEEN);
+            reachedBy[from] = ROOT;
+            int[] prevState = new int[nStates];
+            int[] queue = new int[nStates];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = from;
+            int goal = -1;
+            while (goal < 0 && head < tail) {
+                final int state = queue[head++];
+                this.countExpansion();
+                final int layer = state / n;
+                final int c = state % n;
+                // A common compound can only be expanded if it is a listed compound.
+                if (graph.isCommon(c) && c != this.waypoints[layer])
+                    continue;
+                final int end = graph.fwdEnd(c);
+                for (int pos = graph.fwdStart(c); goal < 0 && pos < end; pos++) {
+                    int s = graph.fwdStep(pos);
+                    if (state == from && avoid.contains(s))
+                        continue;
+                    int o = graph.getOutput(s);
+                    int newLayer = (o == this.waypoints[layer + 1] ? layer + 1 : layer);
+                    int newState = newLayer * n + o;
+                    if (reachedBy[newState] == UNSEEN && ! blocked[newState]
+                            && (newLayer > layer || ! graph.isCommon(o))) {
+                        reachedBy[newState] = s;
+                        prevState[newState] = state;
+                        if (this.isGoal(newState))
+                            goal = newState;
+                        else if (newLayer < this.waypoints.length - 1)
+                            queue[tail++] = newState;
+                    }
+                }
+            }
+            if (goal >= 0) {
+                // Trace the spur back to the start state.
+                List<Integer> spurSteps = new ArrayList<Integer>();
+                List<Integer> spurStates = new ArrayList<Integer>();
+                int state = goal;
+                while (reachedBy[state] != ROOT) {
+                    int s = reachedBy[state];
+                    spurSteps.add(s);
+                    spurStates.add(state);
+                    state = prevState[state];
+                }
+                final int len = root.length + spurSteps.size();
+                int[] steps = Arrays.copyOf(root, len);
+                int[] states = Arrays.copyOf(rootStates, len + 1);
+                for (int i = root.length, j = spurSteps.size() - 1; j >= 0; i++, j--) {
+                    steps[i] = spurSteps.get(j);
+                    states[i + 1] = spurStates.get(j);
+                }
+                retVal = new Route(steps, states);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return a pathway for a route
+     *
+     * @param start		BiGG ID of the starting compound
+     * @param route		route to convert
+     */
+    private Pathway toPathway(String start, Route route) {
+        Pathway retVal = new Pathway(start);
+        for (int s : route.steps) {
+            Step step = this.getGraph().getStep(s);
+            retVal.add(step.getReaction(), step.getOutput(), step.isReversed());
+        }
+        return retVal;
+    }
+
+    /**
+     * @return a list containing the values in an integer array
+     *
+     * @param values	array to convert
+     */
+    private static List<Integer> asList(int[] values) {
+        List<Integer> retVal = new ArrayList<Integer>(values.length);
+        for (int v : values)
+            retVal.add(v);
+        return retVal;
+    }
+
+}
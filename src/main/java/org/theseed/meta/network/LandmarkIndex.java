@@ -0,0 +1,170 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A landmark index provides lower bounds on the number of reactions needed to get from one compound
+ * to another.  A small number of landmark compounds are chosen, and the distance from each landmark
+ * to every compound and from every compound to each landmark is precomputed.  The triangle inequality
+ * then gives a lower bound for the distance between any two compounds.
+ *
+ * The landmarks are chosen to be far apart:  the first is the non-common compound with the most
+ * consuming steps, and each one after that is the compound farthest from the ones already chosen.
+ *
+ * Common compounds cannot be intermediates in a pathway, so the triangle inequality does not hold
+ * for them, and the bound for a common compound is always zero.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class LandmarkIndex {
+
+    // FIELDS
+    /** compact graph being indexed */
+    private final CompactGraph graph;
+    /** indices of the landmark compounds */
+    private final int[] landmarks;
+    /** distance from each landmark to each compound */
+    private final int[][] fromDists;
+    /** distance from each compound to each landmark */
+    private final int[][] toDists;
+    /** default number of landmarks */
+    public static final int DEFAULT_COUNT = 8;
+    /** distance value for an unreachable compound */
+    private static final int UNREACHABLE = -1;
+
+    /**
+     * Build a landmark index for a compact graph.
+     *
+     * @param graph		graph to index
+     * @param count		maximum number of landmarks to use
+     */
+    public LandmarkIndex(CompactGraph graph, int count) {
+        this.graph = graph;
+        final int n = graph.size();
+        List<int[]> froms = new ArrayList<int[]>(count);
+        List<int[]> tos = new ArrayList<int[]>(count);
+        List<Integer> chosen = new ArrayList<Integer>(count);
+        // Find the first landmark.
+        int best = -1;
+        int bestSize = 0;
+        for (int i = 0; i < n; i++) {
+            int size = graph.fwdEnd(i) - graph.fwdStart(i);
+            if (size > bestSize && ! graph.isCommon(i)) {
+                best = i;
+                bestSize = size;
+            }
+        }
+        // This tracks the distance from each compound to the nearest landmark.
+        int[] nearest = new int[n];
+        Arrays.fill(nearest, Integer.MAX_VALUE);
+        while (best >= 0 && chosen.size() < count) {
+            chosen.add(best);
+            int[] from = this.distances(best, true);
+            froms.add(from);
+            tos.add(this.distances(best, false));
+            // The next landmark is the reachable non-common compound farthest from all the current ones.
+            best = -1;
+            int bestDist = 0;
+            for (int i = 0; i < n; i++) {
+                if (from[i] != UNREACHABLE && from[i] < nearest[i])
+                    nearest[i] = from[i];
+                if (nearest[i] != Integer.MAX_VALUE && nearest[i] > bestDist && ! graph.isCommon(i)
+                        && graph.fwdEnd(i) > graph.fwdStart(i)) {
+                    best = i;
+                    bestDist = nearest[i];
+                }
+            }
+        }
+        this.landmarks = chosen.stream().mapToInt(x -> x).toArray();
+        this.fromDists = froms.toArray(new int[froms.size()][]);
+        this.toDists = tos.toArray(new int[tos.size()][]);
+    }
+
+    /**
+     * Compute the distances between a landmark and all the compounds connected to it.
+     *
+     * @param landmark		index of the landmark compound
+     * @param forward		TRUE for distances from the landmark, FALSE for distances to the landmark
+     *
+     * @return an array of distances, indexed by compound
+     */
+    private int[] distances(int landmark, boolean forward) {
+        final int n = this.graph.size();
+        int[] retVal = new int[n];
+        Arrays.fill(retVal, UNREACHABLE);
+        retVal[landmark] = 0;
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = landmark;
+        while (head < tail) {
+            final int c = queue[head++];
+            final int dist = retVal[c] + 1;
+            final int end = (forward ? this.graph.fwdEnd(c) : this.graph.bwdEnd(c));
+            for (int pos = (forward ? this.graph.fwdStart(c) : this.graph.bwdStart(c)); pos < end; pos++) {
+                int other = (forward ? this.graph.getOutput(this.graph.fwdStep(pos))
+                        : this.graph.getInput(this.graph.bwdStep(pos)));
+                if (retVal[other] == UNREACHABLE) {
+                    retVal[other] = dist;
+                    // Common compounds are endpoints only.
+                    if (! this.graph.isCommon(other))
+                        queue[tail++] = other;
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Compute a lower bound on the number of reactions in a pathway from one compound to another.
+     *
+     * @param from		index of the starting compound
+     * @param to		index of the ending compound
+     *
+     * @return a lower bound on the pathway length (never more than the true length)
+     */
+    public int lowerBound(int from, int to) {
+        int retVal = 0;
+        if (! this.graph.isCommon(from) && ! this.graph.isCommon(to)) {
+            final int n = this.landmarks.length;
+            for (int i = 0; i < n; i++) {
+                // The distance from the landmark to the end is no more than the distance to the start
+                // plus the pathway length.
+                int a = this.fromDists[i][from];
+                int b = this.fromDists[i][to];
+                if (a >= 0 && b >= 0 && b - a > retVal)
+                    retVal = b - a;
+                // The distance from the start to the landmark is no more than the pathway length plus
+                // the distance from the end.
+                int c = this.toDists[i][from];
+                int d = this.toDists[i][to];
+                if (c >= 0 && d >= 0 && c - d > retVal)
+                    retVal = c - d;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of landmarks in this index
+     */
+    public int size() {
+        return this.landmarks.length;
+    }
+
+    /**
+     * @return the BiGG ID of the specified landmark
+     *
+     * @param i		index of the desired landmark
+     */
+    public String getLandmark(int i) {
+        return this.graph.getCompound(this.landmarks[i]);
+    }
+
+}
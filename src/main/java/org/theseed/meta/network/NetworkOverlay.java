@@ -0,0 +1,179 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.theseed.metabolism.MetaModel;
+
+/**
+ * A network overlay is a view of a reaction network for a single flow scenario.  Rather than copy
+ * the whole network, it records only the differences from a shared base network:  the steps that
+ * the scenario suppresses, the steps it adds, and its own set of common compounds.  An overlay is
+ * immutable, so any number of them can share the same base and be searched concurrently.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class NetworkOverlay extends BaseReactionNetwork {
+
+    // FIELDS
+    /** base network */
+    private final ReactionNetwork base;
+    /** map of compound IDs to suppressed steps */
+    private final Map<String, Set<Step>> removed;
+    /** map of compound IDs to added steps */
+    private final Map<String, List<Step>> added;
+    /** map of output compound IDs to suppressed steps */
+    private final Map<String, Set<Step>> removedByOutput;
+    /** map of output compound IDs to added steps */
+    private final Map<String, List<Step>> addedByOutput;
+    /** set of common compounds for this scenario */
+    private final Set<String> commons;
+    /** set of compounds with consuming steps in this scenario */
+    private final Set<String> compounds;
+
+    /**
+     * Construct an overlay from its tables.
+     *
+     * @param base			base network
+     * @param removed		map of compound IDs to suppressed steps
+     * @param added			map of compound IDs to added steps
+     * @param commons		set of common compounds for the scenario
+     * @param fingerprint	fingerprint of the scenario's flow modifiers
+     */
+    private NetworkOverlay(ReactionNetwork base, Map<String, Set<Step>> removed, Map<String, List<Step>> added,
+            Set<String> commons, String fingerprint) {
+        super(fingerprint);
+        this.base = base;
+        this.removed = removed;
+        this.added = added;
+        this.commons = commons;
+        // Index the changes by output compound.
+        this.removedByOutput = new HashMap<String, Set<Step>>();
+        for (Set<Step> steps : removed.values()) {
+            for (Step step : steps)
+                this.removedByOutput.computeIfAbsent(step.getOutput(), x -> new HashSet<Step>()).add(step);
+        }
+        this.addedByOutput = ReactionNetwork.producers(added);
+        // Compute the compounds that still have consuming steps.
+        Set<String> found = new HashSet<String>(base.getCompounds());
+        found.addAll(added.keySet());
+        found.removeIf(x -> this.getSteps(x).isEmpty());
+        this.compounds = Collections.unmodifiableSet(found);
+    }
+
+    /**
+     * Derive an overlay from the current state of a model.  The model's reaction network must
+     * reflect the scenario being captured.
+     *
+     * @param base			base network for the overlay
+     * @param model			model whose current network is the scenario
+     * @param fingerprint	fingerprint of the flow modifiers currently applied to the model
+     *
+     * @return the overlay for the model's current network
+     */
+    public static NetworkOverlay derive(ReactionNetwork base, MetaModel model, String fingerprint) {
+        Map<String, Set<Step>> removed = new HashMap<String, Set<Step>>();
+        Map<String, List<Step>> added = new HashMap<String, List<Step>>();
+        // We must check every compound in the base network and every compound in the model.
+        Set<String> compounds = new HashSet<String>(base.getCompounds());
+        compounds.addAll(model.getMetaboliteMap().keySet());
+        for (String compound : compounds) {
+            List<Step> baseSteps = base.getSteps(compound);
+            Set<Step> newSteps = new HashSet<Step>(ReactionNetwork.currentSteps(model, compound));
+            // Find the base steps that are gone.
+            Set<Step> gone = new HashSet<Step>();
+            for (Step step : baseSteps) {
+                if (! newSteps.remove(step))
+                    gone.add(step);
+            }
+            // Anything left in the new set is an addition.
+            if (! gone.isEmpty())
+                removed.put(compound, gone);
+            if (! newSteps.isEmpty())
+                added.put(compound, new ArrayList<Step>(newSteps));
+        }
+        Set<String> commons = new HashSet<String>(model.getCommons());
+        if (commons.equals(base.getCommons()))
+            commons = base.getCommons();
+        else
+            commons = Collections.unmodifiableSet(commons);
+        return new NetworkOverlay(base, removed, added, commons, fingerprint);
+    }
+
+    @Override
+    public List<Step> getSteps(String compound) {
+        return merge(this.base.getSteps(compound), this.removed.get(compound), this.added.get(compound));
+    }
+
+    @Override
+    public List<Step> getProducingSteps(String compound) {
+        return merge(this.base.getProducingSteps(compound), this.removedByOutput.get(compound),
+                this.addedByOutput.get(compound));
+    }
+
+    /**
+     * Apply the scenario's changes to a list of steps from the base network.
+     *
+     * @param baseSteps		list of steps from the base network
+     * @param gone			set of steps suppressed by the scenario, or NULL if none
+     * @param extra			list of steps added by the scenario, or NULL if none
+     *
+     * @return the list of steps in the scenario
+     */
+    private static List<Step> merge(List<Step> baseSteps, Set<Step> gone, List<Step> extra) {
+        List<Step> retVal = baseSteps;
+        if (gone != null || extra != null) {
+            // Here the scenario changes this compound, so we build a custom list.
+            List<Step> steps = new ArrayList<Step>(retVal.size() + (extra == null ? 0 : extra.size()));
+            for (Step step : retVal) {
+                if (gone == null || ! gone.contains(step))
+                    steps.add(step);
+            }
+            if (extra != null)
+                steps.addAll(extra);
+            retVal = steps;
+        }
+        return retVal;
+    }
+
+    @Override
+    public boolean isCommon(String compound) {
+        return this.commons.contains(compound);
+    }
+
+    @Override
+    public Set<String> getCompounds() {
+        return this.compounds;
+    }
+
+    /**
+     * @return the base network for this overlay
+     */
+    public ReactionNetwork getBase() {
+        return this.base;
+    }
+
+    /**
+     * @return the number of steps this overlay suppresses from the base network
+     */
+    public int getRemovedCount() {
+        return this.removed.values().stream().mapToInt(x -> x.size()).sum();
+    }
+
+    /**
+     * @return the number of steps this overlay adds to the base network
+     */
+    public int getAddedCount() {
+        return this.added.values().stream().mapToInt(x -> x.size()).sum();
+    }
+
+}
@@ -0,0 +1,313 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.theseed.metabolism.Pathway;
+
+/**
+ * This object performs pathway searches on a reaction network view.  Unlike the searches in the
+ * metabolic model, these operate on an immutable network, so they can be run against any flow
+ * scenario without rebuilding the model, and several can run at once.
+ *
+ * The basic search is breadth-first, so the pathway found has the fewest possible reactions.  As in
+ * the model search, common compounds are never used as intermediates.  There is also a multi-source
+ * search that starts from several compounds at once, each with its own starting cost, and finds the
+ * cheapest pathway from any of them to the goal.
+ *
+ * The searches run on the network's compact graph, using compound and step indices in primitive
+ * arrays.  The steps are only translated back to a pathway when the search is complete.
+ *
+ * The search object counts the compounds it expands, so that search strategies can be compared.  A
+ * search object should only be used by one thread at a time.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class NetworkSearch {
+
+    // FIELDS
+    /** network to search */
+    private final IReactionNetwork network;
+    /** compact graph of the network */
+    private final CompactGraph graph;
+    /** number of compounds expanded since the last reset */
+    private long expansions;
+    /** back-pointer value for a compound that has not been reached */
+    protected static final int UNSEEN = -2;
+    /** back-pointer value for a starting compound */
+    protected static final int ROOT = -1;
+
+    /**
+     * This object represents a compound waiting in the multi-source search queue.
+     */
+    private static class Candidate implements Comparable<Candidate> {
+
+        /** index of the compound */
+        private final int compound;
+        /** cost to reach the compound */
+        private final long cost;
+
+        /**
+         * Create a queue entry.
+         *
+         * @param compound	index of the compound
+         * @param cost		cost to reach the compound
+         */
+        protected Candidate(int compound, long cost) {
+            this.compound = compound;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Long.compare(this.cost, o.cost);
+        }
+
+    }
+
+    /**
+     * Create a search object for a reaction network.
+     *
+     * @param network		network to search
+     */
+    public NetworkSearch(IReactionNetwork network) {
+        this.network = network;
+        this.graph = network.getCompactGraph();
+        this.expansions = 0;
+    }
+
+    /**
+     * Find the shortest pathway from one compound to another.
+     *
+     * @param start		BiGG ID of the starting compound
+     * @param goal		BiGG ID of the goal compound
+     *
+     * @return the shortest pathway, or NULL if the goal cannot be reached
+     */
+    public Pathway getPathway(String start, String goal) {
+        Pathway retVal = null;
+        List<Step> steps = this.search(start, goal);
+        if (steps != null) {
+            retVal = new Pathway(start);
+            addSteps(retVal, steps);
+        }
+        return retVal;
+    }
+
+    /**
+     * Extend a pathway to a new goal compound.
+     *
+     * @param path		pathway to extend
+     * @param goal		BiGG ID of the new goal compound
+     *
+     * @return a new pathway extending the old one to the goal, or NULL if the goal cannot be reached
+     */
+    public Pathway extendPathway(Pathway path, String goal) {
+        Pathway retVal = null;
+        List<Step> steps = this.search(path.getOutput(), goal);
+        if (steps != null) {
+            retVal = path.clone();
+            addSteps(retVal, steps);
+        }
+        return retVal;
+    }
+
+    /**
+     * Add a list of steps to a pathway.
+     *
+     * @param path		pathway to update
+     * @param steps		list of steps to add
+     */
+    protected static void addSteps(Pathway path, List<Step> steps) {
+        for (Step step : steps)
+            path.add(step.getReaction(), step.getOutput(), step.isReversed());
+    }
+
+    /**
+     * Find the cheapest pathway to a goal compound from any of a set of starting compounds.  Each
+     * starting compound has an initial cost, and each reaction in the pathway adds a fixed cost.
+     *
+     * @param sources		map of starting compound IDs to initial costs
+     * @param stepCost		cost added for each reaction
+     * @param goal			BiGG ID of the goal compound
+     *
+     * @return the cheapest pathway (whose input is the winning starting compound), or NULL if the goal
+     * 		   cannot be reached from any of the starting compounds
+     */
+    public Pathway getPathway(Map<String, Long> sources, long stepCost, String goal) {
+        Pathway retVal = null;
+        final int g = this.graph.getIndex(goal);
+        if (g < 0) {
+            // The goal is not connected to anything, so it can only be one of the starts.
+            if (sources.containsKey(goal))
+                retVal = new Pathway(goal);
+        } else {
+            final int n = this.graph.size();
+            long[] costs = new long[n];
+            Arrays.fill(costs, Long.MAX_VALUE);
+            int[] reachedBy = new int[n];
+            Arrays.fill(reachedBy, UNSEEN);
+            PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+            for (Map.Entry<String, Long> source : sources.entrySet()) {
+                int s = this.graph.getIndex(source.getKey());
+                if (s >= 0 && source.getValue() < costs[s]) {
+                    costs[s] = source.getValue();
+                    reachedBy[s] = ROOT;
+                    queue.add(new Candidate(s, costs[s]));
+                }
+            }
+            boolean found = false;
+            while (! found && ! queue.isEmpty()) {
+                Candidate curr = queue.remove();
+                final int c = curr.compound;
+                if (curr.cost == costs[c]) {
+                    // Here this is the best route to the compound.
+                    this.expansions++;
+                    if (c == g)
+                        found = true;
+                    else if (! this.graph.isCommon(c) || reachedBy[c] == ROOT) {
+                        final long newCost = curr.cost + stepCost;
+                        final int end = this.graph.fwdEnd(c);
+                        for (int pos = this.graph.fwdStart(c); pos < end; pos++) {
+                            int s = this.graph.fwdStep(pos);
+                            int o = this.graph.getOutput(s);
+                            if (newCost < costs[o]) {
+                                costs[o] = newCost;
+                                reachedBy[o] = s;
+                                queue.add(new Candidate(o, newCost));
+                            }
+                        }
+                    }
+                }
+            }
+            if (found) {
+                List<Step> steps = this.traceBack(reachedBy, g);
+                String start = (steps.isEmpty() ? goal : steps.get(0).getInput());
+                retVal = new Pathway(start);
+                addSteps(retVal, steps);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Find the shortest list of steps from one compound to another.
+     *
+     * @param start		BiGG ID of the starting compound
+     * @param goal		BiGG ID of the goal compound
+     *
+     * @return the list of steps from the start to the goal, or NULL if the goal cannot be reached
+     */
+    protected List<Step> search(String start, String goal) {
+        List<Step> retVal = null;
+        if (start.equals(goal))
+            retVal = Collections.emptyList();
+        else {
+            int s = this.graph.getIndex(start);
+            int g = this.graph.getIndex(goal);
+            if (s >= 0 && g >= 0)
+                retVal = this.search(s, g);
+        }
+        return retVal;
+    }
+
+    /**
+     * Perform a breadth-first search from one compound to another.
+     *
+     * @param s		index of the starting compound
+     * @param g		index of the goal compound (which is different)
+     *
+     * @return the list of steps from the start to the goal, or NULL if the goal cannot be reached
+     */
+    protected List<Step> search(int s, int g) {
+        List<Step> retVal = null;
+        final int n = this.graph.size();
+        int[] reachedBy = new int[n];
+        Arrays.fill(reachedBy, UNSEEN);
+        reachedBy[s] = ROOT;
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = s;
+        while (retVal == null && head < tail) {
+            final int c = queue[head++];
+            this.expansions++;
+            final int end = this.graph.fwdEnd(c);
+            for (int pos = this.graph.fwdStart(c); retVal == null && pos < end; pos++) {
+                int step = this.graph.fwdStep(pos);
+                int o = this.graph.getOutput(step);
+                if (o == g) {
+                    reachedBy[o] = step;
+                    retVal = this.traceBack(reachedBy, g);
+                } else if (reachedBy[o] == UNSEEN && ! this.graph.isCommon(o)) {
+                    reachedBy[o] = step;
+                    queue[tail++] = o;
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Build the list of steps leading to a compound from a back-pointer array.
+     *
+     * @param reachedBy		index of the step that reached each compound (ROOT for a starting compound)
+     * @param g				index of the compound whose step list is desired
+     *
+     * @return the list of steps, in order, from a starting compound to the goal
+     */
+    protected List<Step> traceBack(int[] reachedBy, int g) {
+        List<Step> retVal = new ArrayList<Step>();
+        int step = reachedBy[g];
+        while (step >= 0) {
+            retVal.add(this.graph.getStep(step));
+            step = reachedBy[this.graph.getInput(step)];
+        }
+        Collections.reverse(retVal);
+        return retVal;
+    }
+
+    /**
+     * Record the expansion of a compound.
+     */
+    protected void countExpansion() {
+        this.expansions++;
+    }
+
+    /**
+     * @return the number of compounds expanded since the last reset
+     */
+    public long getExpansions() {
+        return this.expansions;
+    }
+
+    /**
+     * Reset the expansion count.
+     */
+    public void resetExpansions() {
+        this.expansions = 0;
+    }
+
+    /**
+     * @return the network being searched
+     */
+    public IReactionNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * @return the compact graph being searched
+     */
+    protected CompactGraph getGraph() {
+        return this.graph;
+    }
+
+}
@@ -0,0 +1,232 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.Pathway;
+
+/**
+ * This object is a bounded cache of pathway search results.  Each result is keyed by the search
+ * endpoints and the fingerprint of the flow modifiers in effect, and the least-recently-used results
+ * are discarded when the cache is full.  When the flow fingerprint changes, the whole cache is
+ * cleared, since none of the results can be used on the new network.
+ *
+ * Pathways are mutable, so a copy is stored in the cache and a copy is returned on each hit.  Failed
+ * searches are cached as well, since they are usually the most expensive.  On a miss, the model is
+ * searched while holding the model's lock, since the model does not promise to be thread-safe.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PathwayCache {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(PathwayCache.class);
+    /** map of search keys to results, in least-recently-used order */
+    private final Map<String, Result> cache;
+    /** fingerprint of the flow modifiers for the cached results */
+    private String fingerprint;
+    /** number of cache hits */
+    private long hits;
+    /** number of cache misses */
+    private long misses;
+    /** default maximum number of results to keep */
+    public static final int DEFAULT_SIZE = 500;
+
+    /**
+     * This object holds a cached search result.  The pathway is NULL if the search failed.
+     */
+    private static class Result {
+
+        /** pathway found, or NULL if the search failed */
+        private final Pathway path;
+
+        /**
+         * Create a cached search result.
+         *
+         * @param path		pathway found, or NULL if the search failed
+         */
+        protected Result(Pathway path) {
+            this.path = (path == null ? null : path.clone());
+        }
+
+        /**
+         * @return a copy of the pathway found, or NULL if the search failed
+         */
+        protected Pathway getPath() {
+            return (this.path == null ? null : this.path.clone());
+        }
+
+    }
+
+    /**
+     * Create a new, empty pathway cache.
+     *
+     * @param maxSize	maximum number of results to keep
+     */
+    public PathwayCache(int maxSize) {
+        this.cache = new LinkedHashMap<String, Result>(maxSize * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return this.size() > maxSize;
+            }
+        };
+        this.fingerprint = "";
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /**
+     * Specify the flow fingerprint for subsequent searches.  If it is different from the current one,
+     * the cache is cleared.
+     *
+     * @param newFingerprint	fingerprint of the flow modifiers now in effect
+     */
+    public synchronized void setFingerprint(String newFingerprint) {
+        if (! newFingerprint.equals(this.fingerprint)) {
+            if (! this.cache.isEmpty())
+                log.info("Flow changed:  {} cached pathways discarded.", this.cache.size());
+            this.cache.clear();
+            this.fingerprint = newFingerprint;
+        }
+    }
+
+    /**
+     * Find the pathway between two compounds, using a cached result if possible.
+     *
+     * @param model		model to search on a cache miss
+     * @param start		BiGG ID of the starting compound
+     * @param goal		BiGG ID of the goal compound
+     *
+     * @return the pathway found, or NULL if there is none
+     */
+    public Pathway getPathway(MetaModel model, String start, String goal) {
+        return this.lookup("P\t" + start + "\t" + goal, model, () -> model.getPathway(start, goal));
+    }
+
+    /**
+     * Extend a pathway to a new compound, using a cached result if possible.
+     *
+     * @param model		model to search on a cache miss
+     * @param path		pathway to extend
+     * @param goal		BiGG ID of the new goal compound
+     *
+     * @return the extended pathway, or NULL if there is none
+     */
+    public Pathway extendPathway(MetaModel model, Pathway path, String goal) {
+        return this.lookup("E\t" + pathKey(path) + "\t" + goal, model, () -> model.extendPathway(path, goal));
+    }
+
+    /**
+     * Get a search result, using the cached result if possible.  On a miss, the search is performed
+     * while holding a lock, and its result is cached.
+     *
+     * @param key		search key
+     * @param lock		object to lock during the search
+     * @param search	function that performs the search and returns the pathway found, or NULL if there is none
+     *
+     * @return the pathway found, or NULL if there is none
+     */
+    Pathway lookup(String key, Object lock, Supplier<Pathway> search) {
+        Pathway retVal;
+        Result result = this.find(key);
+        if (result != null)
+            retVal = result.getPath();
+        else {
+            synchronized (lock) {
+                retVal = search.get();
+            }
+            this.store(key, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return a key string that identifies a pathway
+     *
+     * @param path		pathway to identify
+     */
+    private static String pathKey(Pathway path) {
+        StringBuilder retVal = new StringBuilder(path.size() * 12 + 20);
+        retVal.append(path.getInput());
+        for (Pathway.Element element : path) {
+            retVal.append(element.isReversed() ? '<' : '>');
+            retVal.append(element.getReaction().getBiggId());
+        }
+        retVal.append('=').append(path.getOutput());
+        return retVal.toString();
+    }
+
+    /**
+     * Look for a search result in the cache and record the hit or miss.
+     *
+     * @param key		search key
+     *
+     * @return the cached result, or NULL if there is none
+     */
+    private synchronized Result find(String key) {
+        Result retVal = this.cache.get(key);
+        if (retVal == null)
+            this.misses++;
+        else
+            this.hits++;
+        return retVal;
+    }
+
+    /**
+     * Store a search result in the cache.
+     *
+     * @param key		search key
+     * @param path		pathway found, or NULL if the search failed
+     */
+    private synchronized void store(String key, Pathway path) {
+        this.cache.put(key, new Result(path));
+    }
+
+    /**
+     * Remove all results from the cache.
+     */
+    public synchronized void clear() {
+        this.cache.clear();
+    }
+
+    /**
+     * @return the number of cache hits
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return the number of results in the cache
+     */
+    public synchronized int size() {
+        return this.cache.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = this.hits + this.misses;
+        double rate = (total == 0 ? 0.0 : this.hits * 100.0 / total);
+        return String.format("%d cached pathways, %d hits, %d misses (%.1f%% hit rate)", this.cache.size(),
+                this.hits, this.misses, rate);
+    }
+
+}
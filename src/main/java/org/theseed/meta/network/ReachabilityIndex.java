@@ -0,0 +1,195 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * A reachability index determines in constant time whether or not there is any pathway from one
+ * compound to another.  The strongly connected components of the compact graph are computed, and
+ * then for each component we compute the set of components reachable from it.  Because common
+ * compounds cannot be intermediates, they are treated as having no consuming steps, except when one
+ * is the start of a pathway, in which case its outputs are checked directly.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ReachabilityIndex {
+
+    // FIELDS
+    /** compact graph being indexed */
+    private final CompactGraph graph;
+    /** component number of each compound */
+    private final int[] component;
+    /** set of components reachable from each component (including itself) */
+    private final BitSet[] reachable;
+
+    /**
+     * Build the reachability index for a compact graph.
+     *
+     * @param graph		graph to index
+     */
+    public ReachabilityIndex(CompactGraph graph) {
+        this.graph = graph;
+        final int n = graph.size();
+        this.component = new int[n];
+        Arrays.fill(this.component, -1);
+        // This is an iterative form of Tarjan's algorithm.  Components are numbered in reverse
+        // topological order, so every component reachable from a component has a lower number.
+        int[] order = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(order, -1);
+        int[] stack = new int[n];
+        int stackSize = 0;
+        boolean[] onStack = new boolean[n];
+        int[] callNode = new int[n];
+        int[] callPos = new int[n];
+        int counter = 0;
+        int nComponents = 0;
+        for (int root = 0; root < n; root++) {
+            if (order[root] < 0) {
+                int depth = 0;
+                callNode[0] = root;
+                callPos[0] = this.firstEdge(root);
+                order[root] = low[root] = counter++;
+                stack[stackSize++] = root;
+                onStack[root] = true;
+                while (depth >= 0) {
+                    final int v = callNode[depth];
+                    final int end = this.lastEdge(v);
+                    if (callPos[depth] < end) {
+                        int w = graph.getOutput(graph.fwdStep(callPos[depth]));
+                        callPos[depth]++;
+                        if (order[w] < 0) {
+                            // Recurse into the new compound.
+                            order[w] = low[w] = counter++;
+                            stack[stackSize++] = w;
+                            onStack[w] = true;
+                            depth++;
+                            callNode[depth] = w;
+                            callPos[depth] = this.firstEdge(w);
+                        } else if (onStack[w] && order[w] < low[v])
+                            low[v] = order[w];
+                    } else {
+                        // All of this compound's successors are done.
+                        if (low[v] == order[v]) {
+                            // Here we have the root of a component.
+                            int w;
+                            do {
+                                w = stack[--stackSize];
+                                onStack[w] = false;
+                                this.component[w] = nComponents;
+                            } while (w != v);
+                            nComponents++;
+                        }
+                        depth--;
+                        if (depth >= 0) {
+                            int u = callNode[depth];
+                            if (low[v] < low[u])
+                                low[u] = low[v];
+                        }
+                    }
+                }
+            }
+        }
+        // Now compute the reachable sets.  Each set only depends on lower-numbered components.
+        this.reachable = new BitSet[nComponents];
+        for (int c = 0; c < nComponents; c++)
+            this.reachable[c] = new BitSet(c + 1);
+        for (int v = 0; v < n; v++) {
+            final int c = this.component[v];
+            this.reachable[c].set(c);
+        }
+        // Group the compounds by component so we can process the components in order.
+        int[] start = new int[nComponents + 1];
+        for (int v = 0; v < n; v++)
+            start[this.component[v] + 1]++;
+        for (int c = 0; c < nComponents; c++)
+            start[c + 1] += start[c];
+        int[] members = new int[n];
+        int[] next = start.clone();
+        for (int v = 0; v < n; v++)
+            members[next[this.component[v]]++] = v;
+        for (int c = 0; c < nComponents; c++) {
+            BitSet reach = this.reachable[c];
+            for (int i = start[c]; i < start[c + 1]; i++) {
+                final int v = members[i];
+                final int end = this.lastEdge(v);
+                for (int pos = this.firstEdge(v); pos < end; pos++) {
+                    int d = this.component[graph.getOutput(graph.fwdStep(pos))];
+                    if (d != c && ! reach.get(d))
+                        reach.or(this.reachable[d]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the position of the first traversable consuming step of a compound
+     *
+     * @param v		index of the compound
+     */
+    private int firstEdge(int v) {
+        return this.graph.fwdStart(v);
+    }
+
+    /**
+     * @return the position past the last traversable consuming step of a compound (common compounds have none)
+     *
+     * @param v		index of the compound
+     */
+    private int lastEdge(int v) {
+        return (this.graph.isCommon(v) ? this.graph.fwdStart(v) : this.graph.fwdEnd(v));
+    }
+
+    /**
+     * @return TRUE if there is a pathway from one compound to another
+     *
+     * @param start		BiGG ID of the starting compound
+     * @param goal		BiGG ID of the goal compound
+     */
+    public boolean canReach(String start, String goal) {
+        boolean retVal;
+        if (start.equals(goal))
+            retVal = true;
+        else {
+            int s = this.graph.getIndex(start);
+            int g = this.graph.getIndex(goal);
+            if (s < 0 || g < 0)
+                retVal = false;
+            else if (! this.graph.isCommon(s))
+                retVal = this.reachable[this.component[s]].get(this.component[g]);
+            else {
+                // A common compound can start a pathway, so we check its outputs.
+                retVal = false;
+                final int end = this.graph.fwdEnd(s);
+                for (int pos = this.graph.fwdStart(s); ! retVal && pos < end; pos++) {
+                    int o = this.graph.getOutput(this.graph.fwdStep(pos));
+                    retVal = (o == g || ! this.graph.isCommon(o) && this.reachable[this.component[o]].get(this.component[g]));
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if there is a pathway to a compound from any of a set of starting compounds
+     *
+     * @param starts	BiGG IDs of the starting compounds
+     * @param goal		BiGG ID of the goal compound
+     */
+    public boolean canReachAny(Collection<String> starts, String goal) {
+        return starts.stream().anyMatch(x -> this.canReach(x, goal));
+    }
+
+    /**
+     * @return the number of strongly connected components in the graph
+     */
+    public int getComponentCount() {
+        return this.reachable.length;
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.Reaction;
+
+/**
+ * A reaction network is an immutable capture of the reaction network of a metabolic model.  It is
+ * taken from the model's current state, so it reflects whatever flow modifiers were applied when it
+ * was captured.  Once captured, the network can be searched from any thread without touching the model.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ReactionNetwork extends BaseReactionNetwork {
+
+    // FIELDS
+    /** map of compound IDs to the steps that consume them */
+    private final Map<String, List<Step>> stepMap;
+    /** map of compound IDs to the steps that produce them */
+    private final Map<String, List<Step>> producerMap;
+    /** set of common compounds */
+    private final Set<String> commons;
+
+    /**
+     * Construct a reaction network from its tables.
+     *
+     * @param stepMap		map of compound IDs to consuming steps
+     * @param commons		set of common compounds
+     * @param fingerprint	fingerprint of the flow modifiers in effect
+     */
+    private ReactionNetwork(Map<String, List<Step>> stepMap, Set<String> commons, String fingerprint) {
+        super(fingerprint);
+        this.stepMap = stepMap;
+        this.commons = commons;
+        this.producerMap = producers(stepMap);
+    }
+
+    /**
+     * Build the producing-step map from a consuming-step map.
+     *
+     * @param stepMap		map of compound IDs to consuming steps
+     *
+     * @return a map of compound IDs to producing steps
+     */
+    protected static Map<String, List<Step>> producers(Map<String, List<Step>> stepMap) {
+        Map<String, List<Step>> retVal = new HashMap<String, List<Step>>(stepMap.size() * 4 / 3 + 1);
+        for (List<Step> steps : stepMap.values()) {
+            for (Step step : steps)
+                retVal.computeIfAbsent(step.getOutput(), x -> new ArrayList<Step>()).add(step);
+        }
+        retVal.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        return retVal;
+    }
+
+    /**
+     * Capture the current reaction network of a model.
+     *
+     * @param model			model whose network is to be captured
+     * @param fingerprint	fingerprint of the flow modifiers currently applied to the model
+     *
+     * @return the captured network
+     */
+    public static ReactionNetwork capture(MetaModel model, String fingerprint) {
+        Set<String> compounds = model.getMetaboliteMap().keySet();
+        Map<String, List<Step>> stepMap = new HashMap<String, List<Step>>(compounds.size() * 4 / 3 + 1);
+        for (String compound : compounds) {
+            List<Step> steps = currentSteps(model, compound);
+            if (! steps.isEmpty())
+                stepMap.put(compound, steps);
+        }
+        Set<String> commons = Collections.unmodifiableSet(new HashSet<String>(model.getCommons()));
+        return new ReactionNetwork(stepMap, commons, fingerprint);
+    }
+
+    /**
+     * Compute the steps that consume a compound in a model's current reaction network.
+     *
+     * @param model			model containing the network
+     * @param compound		BiGG ID of the input compound
+     *
+     * @return an unmodifiable list of the consuming steps
+     */
+    protected static List<Step> currentSteps(MetaModel model, String compound) {
+        List<Step> retVal;
+        Collection<Reaction> reactions = model.getSuccessors(compound);
+        if (reactions == null || reactions.isEmpty())
+            retVal = Collections.emptyList();
+        else {
+            retVal = new ArrayList<Step>(reactions.size() * 2);
+            for (Reaction reaction : reactions)
+                retVal.addAll(Step.of(reaction, compound));
+            retVal = Collections.unmodifiableList(retVal);
+        }
+        return retVal;
+    }
+
+    @Override
+    public List<Step> getSteps(String compound) {
+        return this.stepMap.getOrDefault(compound, Collections.emptyList());
+    }
+
+    @Override
+    public List<Step> getProducingSteps(String compound) {
+        return this.producerMap.getOrDefault(compound, Collections.emptyList());
+    }
+
+    @Override
+    public boolean isCommon(String compound) {
+        return this.commons.contains(compound);
+    }
+
+    /**
+     * @return the set of common compounds
+     */
+    public Set<String> getCommons() {
+        return this.commons;
+    }
+
+    @Override
+    public Set<String> getCompounds() {
+        return Collections.unmodifiableSet(this.stepMap.keySet());
+    }
+
+}
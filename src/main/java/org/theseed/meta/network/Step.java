@@ -0,0 +1,128 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.theseed.metabolism.Reaction;
+
+/**
+ * A step is a single edge in a reaction network.  It represents the use of a reaction in a specific
+ * direction to convert an input compound into an output compound.  Steps are immutable, and two steps
+ * are equal if they have the same reaction, direction, input, and output.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class Step {
+
+    // FIELDS
+    /** reaction being used */
+    private final Reaction reaction;
+    /** BiGG ID of the input compound */
+    private final String input;
+    /** BiGG ID of the output compound */
+    private final String output;
+    /** TRUE if the reaction is run in reverse */
+    private final boolean reversed;
+
+    /**
+     * Create a new step.
+     *
+     * @param reaction		reaction being used
+     * @param input			BiGG ID of the input compound
+     * @param output		BiGG ID of the output compound
+     * @param reversed		TRUE if the reaction is run in reverse
+     */
+    public Step(Reaction reaction, String input, String output, boolean reversed) {
+        this.reaction = reaction;
+        this.input = input;
+        this.output = output;
+        this.reversed = reversed;
+    }
+
+    /**
+     * Compute the steps that use a reaction to consume a compound.
+     *
+     * @param reaction		reaction that consumes the compound
+     * @param input			BiGG ID of the consumed compound
+     *
+     * @return a list of the steps, one per output compound
+     */
+    public static List<Step> of(Reaction reaction, String input) {
+        // If the input is a product, the reaction must be run in reverse to consume it.
+        boolean reversed = reaction.isProduct(input);
+        // The compounds are at the odd positions of the parsed formula.  The outputs are the ones
+        // on the opposite side from the input.
+        List<String> parts = reaction.getParsedFormula(reversed);
+        final int n = parts.size();
+        List<Step> retVal = new ArrayList<Step>(n / 2);
+        for (int i = 1; i < n; i += 2) {
+            String compound = parts.get(i);
+            if (reaction.isProduct(compound) != reversed)
+                retVal.add(new Step(reaction, input, compound, reversed));
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the reaction being used
+     */
+    public Reaction getReaction() {
+        return this.reaction;
+    }
+
+    /**
+     * @return the BiGG ID of the input compound
+     */
+    public String getInput() {
+        return this.input;
+    }
+
+    /**
+     * @return the BiGG ID of the output compound
+     */
+    public String getOutput() {
+        return this.output;
+    }
+
+    /**
+     * @return TRUE if the reaction is run in reverse
+     */
+    public boolean isReversed() {
+        return this.reversed;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + this.reaction.getBiggId().hashCode();
+        result = prime * result + this.input.hashCode();
+        result = prime * result + this.output.hashCode();
+        result = prime * result + (this.reversed ? 1231 : 1237);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Step)) {
+            return false;
+        }
+        Step other = (Step) obj;
+        return this.reversed == other.reversed && this.input.equals(other.input)
+                && this.output.equals(other.output)
+                && this.reaction.getBiggId().equals(other.reaction.getBiggId());
+    }
+
+    @Override
+    public String toString() {
+        return this.input + " -[" + this.reaction.getBiggId() + (this.reversed ? "-R" : "") + "]-> " + this.output;
+    }
+
+}
@@ -0,0 +1,524 @@
+/**
+ *
+ */
+package org.theseed.meta.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.Pathway;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+
+/**
+ * A subsystem archive holds all the pathways of a subsystem in a single file, so that a subsystem can be
+ * loaded with one sequential read instead of a directory listing and a file open for each pathway.  If a
+ * subsystem directory contains an archive, the archive is used in place of the individual pathway files.
+ *
+ * The archive begins with a magic number, a version number, and the entry count.  This is followed by the
+ * index, which contains for each pathway its file name, input compound, output compound, length (in
+ * reactions), and the offset and size of its JSON text.  The index is sorted from shortest to longest
+ * pathway, so a subsystem can be listed in order from the index alone.  The rest of the file is the JSON
+ * text of the pathways, exactly as written by Pathway.save.  Offsets are relative to the end of the index.
+ *
+ * The index is read when the archive is opened, and it describes every pathway, so the pathways only need
+ * to be parsed when they are actually used (see SubsystemPath).  If the JSON text is small enough, it is
+ * read in a single operation the first time a pathway is needed.  Otherwise, each pathway's text is read
+ * separately, so an archive can be larger than the biggest possible array.  An archive can be read by
+ * several threads at once.
+ *
+ * The archive file is opened once, when the index is read, and every read goes through that same handle.
+ * A build replaces an archive by renaming a new file over it, so an archive object that is already open
+ * keeps reading the file its index describes, and descriptors loaded before the build remain valid.  The
+ * handle is released when the archive is closed or is no longer referenced.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SubsystemArchive implements Closeable {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SubsystemArchive.class);
+    /** archive file */
+    private File archiveFile;
+    /** open channel for the archive file */
+    private FileChannel channel;
+    /** index entries, from shortest to longest pathway */
+    private List<Entry> entries;
+    /** map of file names to index entries */
+    private Map<String, Entry> nameMap;
+    /** position in the file of the JSON text */
+    private long dataStart;
+    /** JSON text of the pathways, or NULL if it has not been read or is too big to read at once */
+    private byte[] data;
+    /** magic number for archive files */
+    private static final int MAGIC = 0x53534152;
+    /** current archive format version */
+    private static final int VERSION = 1;
+    /** name of the archive file in a subsystem directory */
+    public static final String ARCHIVE_NAME = "subsystem.archive";
+    /** maximum size of JSON text to read in a single operation */
+    private static final long MAX_BUFFERED = 64L * 1024 * 1024;
+
+    /**
+     * This object describes a single pathway in the archive.  Entries are ordered from shortest to
+     * longest pathway, then by output compound and file name.
+     */
+    public static class Entry implements Comparable<Entry> {
+
+        /** name of the pathway file */
+        private String name;
+        /** input compound of the pathway */
+        private String input;
+        /** output compound of the pathway */
+        private String output;
+        /** number of reactions in the pathway */
+        private int length;
+        /** offset of the JSON text */
+        private long offset;
+        /** size of the JSON text */
+        private int size;
+
+        /**
+         * Create an index entry.
+         *
+         * @param name		name of the pathway file
+         * @param input		input compound of the pathway
+         * @param output	output compound of the pathway
+         * @param length	number of reactions in the pathway
+         */
+        protected Entry(String name, String input, String output, int length) {
+            this.name = name;
+            this.input = input;
+            this.output = output;
+            this.length = length;
+            this.offset = 0;
+            this.size = 0;
+        }
+
+        /**
+         * @return the name of the pathway file
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return the input compound of the pathway
+         */
+        public String getInput() {
+            return this.input;
+        }
+
+        /**
+         * @return the output compound of the pathway
+         */
+        public String getOutput() {
+            return this.output;
+        }
+
+        /**
+         * @return the number of reactions in the pathway
+         */
+        public int getLength() {
+            return this.length;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int retVal = Integer.compare(this.length, o.length);
+            if (retVal == 0) {
+                retVal = this.output.compareTo(o.output);
+                if (retVal == 0)
+                    retVal = this.name.compareTo(o.name);
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * This object accumulates pathways for a new archive.  A pathway added with the same file name as
+     * an earlier one replaces it.
+     */
+    public static class Writer {
+
+        /** map of file names to index entries */
+        private Map<String, Entry> entries;
+        /** map of file names to JSON text */
+        private Map<String, byte[]> texts;
+
+        /**
+         * Create an empty archive writer.
+         */
+        public Writer() {
+            this.entries = new TreeMap<String, Entry>();
+            this.texts = new HashMap<String, byte[]>();
+        }
+
+        /**
+         * Add a pathway to the archive.
+         *
+         * @param name		name of the pathway file
+         * @param path		pathway to add
+         * @param text		JSON text of the pathway, as written by Pathway.save
+         */
+        public void add(String name, Pathway path, byte[] text) {
+            this.add(name, path.getInput(), path.getOutput(), path.size(), text);
+        }
+
+        /**
+         * Add a pathway to the archive, given its description.
+         *
+         * @param name		name of the pathway file
+         * @param input		input compound of the pathway
+         * @param output	output compound of the pathway
+         * @param length	number of reactions in the pathway
+         * @param text		JSON text of the pathway, as written by Pathway.save
+         */
+        protected void add(String name, String input, String output, int length, byte[] text) {
+            this.entries.put(name, new Entry(name, input, output, length));
+            this.texts.put(name, text);
+        }
+
+        /**
+         * Add a pathway from an existing archive.
+         *
+         * @param archive	archive containing the pathway
+         * @param entry		index entry for the pathway
+         *
+         * @throws IOException
+         */
+        public void add(SubsystemArchive archive, Entry entry) throws IOException {
+            this.add(entry.name, entry.input, entry.output, entry.length, archive.read(entry));
+        }
+
+        /**
+         * @return the number of pathways in the archive
+         */
+        public int size() {
+            return this.entries.size();
+        }
+
+        /**
+         * Write the archive.
+         *
+         * @param outFile	file to which the archive should be written
+         *
+         * @throws IOException
+         */
+        public void save(File outFile) throws IOException {
+            List<Entry> sorted = new ArrayList<Entry>(this.entries.values());
+            Collections.sort(sorted);
+            long offset = 0;
+            for (Entry entry : sorted) {
+                entry.offset = offset;
+                entry.size = this.texts.get(entry.name).length;
+                offset += entry.size;
+            }
+            try (DataOutputStream outStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+                outStream.writeInt(MAGIC);
+                outStream.writeInt(VERSION);
+                outStream.writeInt(sorted.size());
+                for (Entry entry : sorted) {
+                    writeString(outStream, entry.name);
+                    writeString(outStream, entry.input);
+                    writeString(outStream, entry.output);
+                    outStream.writeInt(entry.length);
+                    outStream.writeLong(entry.offset);
+                    outStream.writeInt(entry.size);
+                }
+                for (Entry entry : sorted)
+                    outStream.write(this.texts.get(entry.name));
+            }
+        }
+
+    }
+
+    /**
+     * @return the archive file for a subsystem directory
+     *
+     * @param subDir	subsystem directory of interest
+     */
+    public static File archiveFile(File subDir) {
+        return new File(subDir, ARCHIVE_NAME);
+    }
+
+    /**
+     * @return TRUE if the specified subsystem directory has an archive
+     *
+     * @param subDir	subsystem directory of interest
+     */
+    public static boolean exists(File subDir) {
+        return archiveFile(subDir).canRead();
+    }
+
+    /**
+     * Open the archive for a subsystem directory.  Only the index is read.
+     *
+     * @param subDir	subsystem directory containing the archive
+     *
+     * @return the archive
+     *
+     * @throws IOException
+     */
+    public static SubsystemArchive open(File subDir) throws IOException {
+        SubsystemArchive retVal = new SubsystemArchive();
+        retVal.archiveFile = archiveFile(subDir);
+        RandomAccessFile inFile = new RandomAccessFile(retVal.archiveFile, "r");
+        retVal.channel = inFile.getChannel();
+        boolean opened = false;
+        try {
+            // The index stream shares the channel, so it must not be closed.
+            DataInputStream inStream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(retVal.channel)));
+            if (inStream.readInt() != MAGIC)
+                throw new IOException(retVal.archiveFile + " is not a subsystem archive.");
+            int version = inStream.readInt();
+            if (version != VERSION)
+                throw new IOException(retVal.archiveFile + " has unsupported archive version " + version + ".");
+            int n = inStream.readInt();
+            long pos = 3 * Integer.BYTES;
+            retVal.entries = new ArrayList<Entry>(n);
+            retVal.nameMap = new HashMap<String, Entry>(n * 4 / 3 + 1);
+            for (int i = 0; i < n; i++) {
+                byte[] name = readBytes(inStream);
+                byte[] input = readBytes(inStream);
+                byte[] output = readBytes(inStream);
+                Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), new String(input, StandardCharsets.UTF_8),
+                        new String(output, StandardCharsets.UTF_8), inStream.readInt());
+                entry.offset = inStream.readLong();
+                entry.size = inStream.readInt();
+                pos += 3 * Integer.BYTES + name.length + input.length + output.length + 2 * Integer.BYTES + Long.BYTES;
+                retVal.entries.add(entry);
+                retVal.nameMap.put(entry.name, entry);
+            }
+            retVal.dataStart = pos;
+            opened = true;
+        } finally {
+            if (! opened)
+                inFile.close();
+        }
+        retVal.data = null;
+        log.info("{} pathways indexed in {}.", retVal.entries.size(), retVal.archiveFile);
+        return retVal;
+    }
+
+    /**
+     * Create an archive for a subsystem directory from its pathway files.  The pathway files are not
+     * deleted, but they will be ignored once the archive exists.  The model may be in use by other threads,
+     * so the pathways are parsed while holding its lock.
+     *
+     * @param subDir	subsystem directory to pack
+     * @param model		model containing the pathways' reactions
+     *
+     * @return the number of pathways packed
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     * @throws JsonException
+     */
+    public static int pack(File subDir, MetaModel model) throws IOException, ParseFailureException, JsonException {
+        File[] pathFiles = subDir.listFiles(new Pathway.FileFilter());
+        if (pathFiles == null)
+            throw new IOException(subDir + " is not a valid subsystem directory.");
+        Writer writer = new Writer();
+        for (File pathFile : pathFiles) {
+            Pathway path;
+            synchronized (model) {
+                path = new Pathway(pathFile, model);
+            }
+            writer.add(pathFile.getName(), path, Files.readAllBytes(pathFile.toPath()));
+        }
+        File archive = archiveFile(subDir);
+        File tempFile = new File(subDir, ARCHIVE_NAME + ".tmp");
+        writer.save(tempFile);
+        moveFile(tempFile, archive);
+        log.info("{} pathways packed into {}.", writer.size(), archive);
+        return writer.size();
+    }
+
+    /**
+     * Move a file into a subsystem directory, replacing any existing copy.  An atomic rename is used if
+     * the file system supports it, so that a reader never sees a partially-written file.
+     *
+     * @param source	file to move
+     * @param target	destination file
+     *
+     * @throws IOException
+     */
+    public static void moveFile(File source, File target) throws IOException {
+        Path sourcePath = source.toPath();
+        Path targetPath = target.toPath();
+        try {
+            Files.move(sourcePath, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return the index entries, from shortest to longest pathway
+     */
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * @return the index entry for a pathway file, or NULL if it is not in the archive
+     *
+     * @param name		name of the pathway file
+     */
+    public Entry find(String name) {
+        return this.nameMap.get(name);
+    }
+
+    /**
+     * @return the archive file
+     */
+    public File getFile() {
+        return this.archiveFile;
+    }
+
+    /**
+     * @return the JSON text of a pathway
+     *
+     * @param entry		index entry for the pathway
+     *
+     * @throws IOException
+     */
+    public byte[] read(Entry entry) throws IOException {
+        byte[] retVal = new byte[entry.size];
+        byte[] buffer = this.getData();
+        if (buffer != null)
+            System.arraycopy(buffer, (int) entry.offset, retVal, 0, entry.size);
+        else
+            this.readFully(retVal, this.dataStart + entry.offset);
+        return retVal;
+    }
+
+    /**
+     * Fill a buffer from a specified position in the archive file.  The channel's position is not used, so
+     * this can be called by several threads at once.
+     *
+     * @param buffer	buffer to fill
+     * @param pos		position in the file of the first byte to read
+     *
+     * @throws IOException
+     */
+    private void readFully(byte[] buffer, long pos) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer);
+        while (target.hasRemaining()) {
+            int n = this.channel.read(target, pos + target.position());
+            if (n < 0)
+                throw new EOFException("Unexpected end of subsystem archive " + this.archiveFile + ".");
+        }
+    }
+
+    /**
+     * Release the archive file.  Pathways that have not been read cannot be loaded afterward.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Load a pathway from the archive.
+     *
+     * @param entry		index entry for the pathway
+     * @param model		model containing the pathway's reactions
+     *
+     * @return the pathway
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     * @throws JsonException
+     */
+    public Pathway load(Entry entry, MetaModel model) throws IOException, ParseFailureException, JsonException {
+        // The pathway can only be parsed from a file, so we copy it to a local temporary file.
+        Path tempFile = Files.createTempFile("subsys", Pathway.FILE_EXT);
+        try {
+            Files.write(tempFile, this.read(entry));
+            synchronized (model) {
+                return new Pathway(tempFile.toFile(), model);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * @return the JSON text of all the pathways, reading it if necessary, or NULL if it is too big to
+     * 		   read at once
+     *
+     * @throws IOException
+     */
+    private synchronized byte[] getData() throws IOException {
+        if (this.data == null) {
+            long size = this.channel.size() - this.dataStart;
+            if (size <= MAX_BUFFERED) {
+                byte[] buffer = new byte[(int) size];
+                this.readFully(buffer, this.dataStart);
+                this.data = buffer;
+            }
+        }
+        return this.data;
+    }
+
+    /**
+     * Write a string to an archive.
+     *
+     * @param outStream		output stream for the archive
+     * @param string		string to write
+     *
+     * @throws IOException
+     */
+    private static void writeString(DataOutputStream outStream, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        outStream.writeInt(bytes.length);
+        outStream.write(bytes);
+    }
+
+    /**
+     * @return the bytes of a string read from an archive
+     *
+     * @param inStream		input stream for the archive
+     *
+     * @throws IOException
+     */
+    private static byte[] readBytes(DataInputStream inStream) throws IOException {
+        byte[] retVal = new byte[inStream.readInt()];
+        inStream.readFully(retVal);
+        return retVal;
+    }
+
+}
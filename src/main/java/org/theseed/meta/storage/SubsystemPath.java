@@ -0,0 +1,144 @@
+/**
+ *
+ */
+package org.theseed.meta.storage;
+
+import java.io.IOException;
+
+import org.theseed.basic.ParseFailureException;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.Pathway;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+
+/**
+ * This object describes a single pathway in a subsystem.  The input compound, output compound, and length
+ * are always available, so a subsystem can be listed, sorted, and scored without parsing its pathways.  For
+ * an archived subsystem these come from the archive index, and the pathway itself is only parsed the first
+ * time it is requested.  For a subsystem that is a directory of pathway files, the pathway has to be parsed
+ * to find them, so it is parsed when the descriptor is created.
+ *
+ * The parsed pathway is cached and shared, so clients must clone it before modifying it.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SubsystemPath implements Comparable<SubsystemPath> {
+
+    // FIELDS
+    /** name of the pathway file */
+    private final String name;
+    /** input compound of the pathway */
+    private final String input;
+    /** output compound of the pathway */
+    private final String output;
+    /** number of reactions in the pathway */
+    private final int length;
+    /** archive containing the pathway, or NULL if the pathway was parsed from a file */
+    private final SubsystemArchive archive;
+    /** archive index entry for the pathway, or NULL if the pathway was parsed from a file */
+    private final SubsystemArchive.Entry entry;
+    /** parsed pathway, or NULL if it has not been parsed yet */
+    private Pathway path;
+
+    /**
+     * Create a descriptor for a pathway in a subsystem archive.
+     *
+     * @param archive	archive containing the pathway
+     * @param entry		index entry for the pathway
+     */
+    public SubsystemPath(SubsystemArchive archive, SubsystemArchive.Entry entry) {
+        this.name = entry.getName();
+        this.input = entry.getInput();
+        this.output = entry.getOutput();
+        this.length = entry.getLength();
+        this.archive = archive;
+        this.entry = entry;
+        this.path = null;
+    }
+
+    /**
+     * Create a descriptor for a pathway that has already been parsed.
+     *
+     * @param name		name of the pathway file
+     * @param path		parsed pathway
+     */
+    public SubsystemPath(String name, Pathway path) {
+        this.name = name;
+        this.input = path.getInput();
+        this.output = path.getOutput();
+        this.length = path.size();
+        this.archive = null;
+        this.entry = null;
+        this.path = path;
+    }
+
+    /**
+     * @return the name of the pathway file
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the input compound of the pathway
+     */
+    public String getInput() {
+        return this.input;
+    }
+
+    /**
+     * @return the output compound of the pathway
+     */
+    public String getOutput() {
+        return this.output;
+    }
+
+    /**
+     * @return the number of reactions in the pathway
+     */
+    public int size() {
+        return this.length;
+    }
+
+    /**
+     * @return TRUE if the pathway has been parsed
+     */
+    public synchronized boolean isParsed() {
+        return (this.path != null);
+    }
+
+    /**
+     * Get the pathway, parsing it if necessary.
+     *
+     * @param model		model containing the pathway's reactions
+     *
+     * @return the pathway (which must not be modified)
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     * @throws JsonException
+     */
+    public synchronized Pathway getPathway(MetaModel model) throws IOException, ParseFailureException, JsonException {
+        if (this.path == null)
+            this.path = this.archive.load(this.entry, model);
+        return this.path;
+    }
+
+    @Override
+    public int compareTo(SubsystemPath o) {
+        int retVal = Integer.compare(this.length, o.length);
+        if (retVal == 0) {
+            retVal = this.output.compareTo(o.output);
+            if (retVal == 0)
+                retVal = this.name.compareTo(o.name);
+        }
+        return retVal;
+    }
+
+    @Override
+    public String toString() {
+        return this.input + " to " + this.output + " (" + this.length + " reactions)";
+    }
+
+}
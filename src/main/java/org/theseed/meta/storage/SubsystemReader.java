@@ -0,0 +1,153 @@
+/**
+ *
+ */
+package org.theseed.meta.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.Pathway;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+
+/**
+ * This object reads the pathways of a subsystem.  A subsystem is either a directory of pathway files or
+ * a directory containing a subsystem archive.  If the archive is present, the pathway files are ignored.
+ *
+ * The pathways are numbered from 0 to one less than the size, and each is returned as a subsystem path
+ * descriptor.  For an archive, the numbering is the order of the archive index, which is from shortest to
+ * longest pathway, and the descriptors come straight from the index without parsing anything.  For a
+ * directory, each pathway file is parsed when it is read, while holding the model's lock, since the model
+ * does not promise to be thread-safe.  The pathway library reads, parses, and resolves a file in a single
+ * call, so the lock covers the whole operation, and several threads reading a directory at once would
+ * simply take turns.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SubsystemReader {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SubsystemReader.class);
+    /** subsystem directory */
+    private File subDir;
+    /** subsystem archive, or NULL if the subsystem is a directory of pathway files */
+    private SubsystemArchive archive;
+    /** pathway files, or NULL if the subsystem is archived */
+    private File[] pathFiles;
+
+    /**
+     * Open a subsystem for reading.
+     *
+     * @param subDir	subsystem directory
+     *
+     * @throws IOException
+     */
+    public SubsystemReader(File subDir) throws IOException {
+        this.subDir = subDir;
+        if (SubsystemArchive.exists(subDir)) {
+            this.archive = SubsystemArchive.open(subDir);
+            this.pathFiles = null;
+        } else {
+            this.archive = null;
+            this.pathFiles = subDir.listFiles(new Pathway.FileFilter());
+            if (this.pathFiles == null)
+                throw new IOException(subDir + " is not a valid subsystem directory.");
+        }
+    }
+
+    /**
+     * @return TRUE if the subsystem is archived
+     */
+    public boolean isArchive() {
+        return (this.archive != null);
+    }
+
+    /**
+     * @return the number of pathways in the subsystem
+     */
+    public int size() {
+        return (this.archive != null ? this.archive.getEntries().size() : this.pathFiles.length);
+    }
+
+    /**
+     * Read a single pathway from the subsystem.
+     *
+     * @param idx		index of the pathway to read
+     * @param model		model containing the pathway's reactions
+     *
+     * @return the descriptor for the pathway
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     * @throws JsonException
+     */
+    public SubsystemPath read(int idx, MetaModel model) throws IOException, ParseFailureException, JsonException {
+        SubsystemPath retVal;
+        if (this.archive != null)
+            retVal = new SubsystemPath(this.archive, this.archive.getEntries().get(idx));
+        else {
+            File pathFile = this.pathFiles[idx];
+            Pathway path;
+            synchronized (model) {
+                path = new Pathway(pathFile, model);
+            }
+            retVal = new SubsystemPath(pathFile.getName(), path);
+        }
+        return retVal;
+    }
+
+    /**
+     * Read all the pathways in the subsystem.
+     *
+     * @param model		model containing the pathways' reactions
+     *
+     * @return the descriptors for the pathways in the subsystem, sorted from shortest to longest
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     * @throws JsonException
+     */
+    public List<SubsystemPath> readAll(MetaModel model) throws IOException, ParseFailureException, JsonException {
+        final int n = this.size();
+        List<SubsystemPath> retVal = new ArrayList<SubsystemPath>(n);
+        for (int i = 0; i < n; i++)
+            retVal.add(this.read(i, model));
+        // An archive is already in order, so this costs very little.
+        Collections.sort(retVal);
+        log.info("{} pathways listed from subsystem {}.", retVal.size(), this.subDir);
+        return retVal;
+    }
+
+    /**
+     * @return the JSON text of a pathway in the subsystem, exactly as written by Pathway.save, or NULL if
+     * 		   the subsystem has no such pathway
+     *
+     * @param name		name of the pathway file
+     *
+     * @throws IOException
+     */
+    public byte[] readText(String name) throws IOException {
+        byte[] retVal = null;
+        if (this.archive != null) {
+            SubsystemArchive.Entry entry = this.archive.find(name);
+            if (entry != null)
+                retVal = this.archive.read(entry);
+        } else {
+            File pathFile = new File(this.subDir, name);
+            if (pathFile.canRead())
+                retVal = Files.readAllBytes(pathFile.toPath());
+        }
+        return retVal;
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package org.theseed.meta.controllers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the compound search index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class TestCompoundIndex {
+
+    /**
+     * @return a small list of compounds for testing
+     */
+    private static List<MetaCompound> sampleCompounds() {
+        List<MetaCompound> retVal = new ArrayList<MetaCompound>();
+        retVal.add(new MetaCompound("glc__D_e", "D-Glucose"));
+        retVal.add(new MetaCompound("glc__D_c", "D-Glucose"));
+        retVal.add(new MetaCompound("g6p_c", "D-Glucose 6-phosphate"));
+        retVal.add(new MetaCompound("f6p_c", "D-Fructose 6-phosphate"));
+        retVal.add(new MetaCompound("pyr_c", "Pyruvate"));
+        retVal.add(new MetaCompound("atp_c", "ATP C10H12N5O13P3"));
+        retVal.add(new MetaCompound("glu__L_c", "L-Glutamate"));
+        retVal.add(new MetaCompound("gln__L_c", "L-Glutamine"));
+        retVal.add(new MetaCompound("h2o_c", "H2O H2O"));
+        return retVal;
+    }
+
+    /**
+     * @return the IDs of the compounds that match a search string, found by scanning the list
+     *
+     * @param compounds		compounds to scan
+     * @param string		search string
+     */
+    private static List<String> scan(List<MetaCompound> compounds, String string) {
+        String lc = string.toLowerCase();
+        return compounds.stream().filter(x -> x.matches(lc)).map(x -> x.getId()).sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * @return the IDs of a list of compounds, sorted
+     *
+     * @param compounds		compounds whose IDs are desired
+     */
+    private static List<String> ids(List<MetaCompound> compounds) {
+        return compounds.stream().map(x -> x.getId()).sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * @return the IDs of a list of compounds, in order
+     *
+     * @param compounds		compounds whose IDs are desired
+     */
+    private static List<String> idList(List<MetaCompound> compounds) {
+        return compounds.stream().map(x -> x.getId()).collect(Collectors.toList());
+    }
+
+    @Test
+    void testMatches() {
+        List<MetaCompound> compounds = sampleCompounds();
+        CompoundIndex index = new CompoundIndex(compounds);
+        assertThat(index.size(), equalTo(compounds.size()));
+        // Short strings cannot have near misses, so these must find exactly what the scan finds.
+        // We use a new index each time so that no results are narrowed.
+        for (String string : new String[] { "g", "gl", "glc", "GLC", "6-p", "pyr", "c10", "h2o", "zz", "l-g" }) {
+            index = new CompoundIndex(compounds);
+            assertThat(string, ids(index.search(string)), equalTo(scan(compounds, string)));
+        }
+        // Longer strings must find everything the scan finds.
+        for (String string : new String[] { "glucose", "phosphate", "Glutam", "fructose 6" }) {
+            index = new CompoundIndex(compounds);
+            assertThat(string, ids(index.search(string)), hasItems(scan(compounds, string).toArray(new String[0])));
+        }
+        // An empty string returns everything in ID order.
+        List<MetaCompound> all = index.search("");
+        assertThat(all.size(), equalTo(compounds.size()));
+        for (int i = 1; i < all.size(); i++)
+            assertThat(all.get(i).getId(), greaterThan(all.get(i - 1).getId()));
+    }
+
+    @Test
+    void testNarrowing() {
+        List<MetaCompound> compounds = sampleCompounds();
+        CompoundIndex index = new CompoundIndex(compounds);
+        // Simulate typing, backspacing, and retyping in a search box.  Each result must be the same as
+        // the result from a fresh index.
+        for (String string : new String[] { "g", "gl", "glu", "glut", "GLUTA", "glutam", "glu", "gl", "glc", "glc__",
+                "", "6", "6-", "6-p", "6-ph", "d", "d-g", "d-glucose 6" }) {
+            CompoundIndex fresh = new CompoundIndex(compounds);
+            assertThat(string, index.search(string), equalTo(fresh.search(string)));
+        }
+    }
+
+    @Test
+    void testRanking() {
+        List<MetaCompound> compounds = new ArrayList<MetaCompound>();
+        compounds.add(new MetaCompound("x4", "Aglutinin"));
+        compounds.add(new MetaCompound("x3", "alpha glucan"));
+        compounds.add(new MetaCompound("x2", "Glucose"));
+        compounds.add(new MetaCompound("x5", "Glue"));
+        compounds.add(new MetaCompound("x1", "glu"));
+        compounds.add(new MetaCompound("glu__L_c", "L-Glutamate"));
+        compounds.add(new MetaCompound("glu", "Glutamic residue"));
+        compounds.add(new MetaCompound("x6", "Pyruvate"));
+        CompoundIndex index = new CompoundIndex(compounds);
+        // The order is exact ID, ID prefix, exact name, name prefix (shortest first), word prefix, substring.
+        assertThat(idList(index.search("GLU")), contains("glu", "glu__L_c", "x1", "x5", "x2", "x3", "x4"));
+        // Ties are broken by ID.
+        compounds = new ArrayList<MetaCompound>();
+        for (int i = 0; i < 3; i++)
+            compounds.add(new MetaCompound("b" + i, "Sugar"));
+        index = new CompoundIndex(compounds);
+        assertThat(idList(index.search("sug")), contains("b0", "b1", "b2"));
+    }
+
+    @Test
+    void testLimit() {
+        List<MetaCompound> compounds = new ArrayList<MetaCompound>();
+        final int n = CompoundIndex.MAX_RESULTS + 100;
+        for (int i = 0; i < n; i++)
+            compounds.add(new MetaCompound(String.format("c%04d", i), "Compound " + i));
+        CompoundIndex index = new CompoundIndex(compounds);
+        List<MetaCompound> found = index.search("compound");
+        assertThat(found.size(), equalTo(CompoundIndex.MAX_RESULTS));
+        // The shortest names come first.
+        assertThat(found.get(0).getId(), equalTo("c0000"));
+        assertThat(found.get(9).getId(), equalTo("c0009"));
+        assertThat(found.get(10).getId(), equalTo("c0010"));
+        assertThat(found.get(100).getId(), equalTo("c0100"));
+        // The empty search is not limited.
+        assertThat(index.search("").size(), equalTo(n));
+    }
+
+    @Test
+    void testFuzzy() {
+        List<MetaCompound> compounds = sampleCompounds();
+        compounds.add(new MetaCompound("oaa_c", "Pyruvyte"));
+        CompoundIndex index = new CompoundIndex(compounds);
+        // A single typing error in a short string.
+        assertThat(idList(index.search("pyruvte")), containsInAnyOrder("pyr_c", "oaa_c"));
+        assertThat(idList(index.search("glucoze")), containsInAnyOrder("glc__D_c", "glc__D_e", "g6p_c"));
+        // Exact matches come before near misses.
+        assertThat(idList(index.search("pyruvate")), contains("pyr_c", "oaa_c"));
+        // IDs count as words.
+        assertThat(idList(index.search("gln__l_x")), contains("gln__L_c", "glu__L_c"));
+        // Two errors are allowed in a long string, but not in a short one.
+        assertThat(idList(index.search("glutamune")), hasItem("gln__L_c"));
+        assertThat(idList(index.search("glutamyne")), hasItems("gln__L_c", "glu__L_c"));
+        assertThat(idList(index.search("pyxxvate")), contains("pyr_c"));
+        assertThat(index.search("pxrxvxte"), empty());
+        assertThat(index.search("gxucoxe"), empty());
+        // Very short strings are never fuzzy.
+        assertThat(index.search("pyx"), empty());
+        assertThat(index.search("zzzzzzzzzz"), empty());
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package org.theseed.meta.controllers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * Tests for the delta update of compound lists.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class TestCompoundList {
+
+    /**
+     * This object counts the items added to and removed from an observable list.
+     */
+    private static class ChangeCounter implements ListChangeListener<MetaCompound> {
+
+        /** number of items added */
+        private int added;
+        /** number of items removed */
+        private int removed;
+        /** number of change notifications */
+        private int notices;
+
+        @Override
+        public void onChanged(Change<? extends MetaCompound> c) {
+            this.notices++;
+            while (c.next()) {
+                this.added += c.getAddedSize();
+                this.removed += c.getRemovedSize();
+            }
+        }
+
+    }
+
+    /**
+     * @return a list of compounds with the specified IDs
+     *
+     * @param ids	IDs of the compounds to list
+     */
+    private static List<MetaCompound> compounds(String... ids) {
+        List<MetaCompound> retVal = new ArrayList<MetaCompound>(ids.length);
+        for (String id : ids)
+            retVal.add(new MetaCompound(id, "compound " + id));
+        return retVal;
+    }
+
+    /**
+     * Update a list and verify the result and the number of items changed.
+     *
+     * @param oldIds		IDs of the compounds originally in the list
+     * @param newIds		IDs of the compounds to put in the list
+     * @param added			expected number of items added
+     * @param removed		expected number of items removed
+     *
+     * @return the number of change notifications
+     */
+    private static int checkUpdate(String[] oldIds, String[] newIds, int added, int removed) {
+        ObservableList<MetaCompound> items = FXCollections.observableArrayList(compounds(oldIds));
+        ChangeCounter counter = new ChangeCounter();
+        items.addListener(counter);
+        List<MetaCompound> newItems = compounds(newIds);
+        CompoundList.replaceAll(items, newItems);
+        assertThat(items, equalTo(newItems));
+        assertThat("added", counter.added, equalTo(added));
+        assertThat("removed", counter.removed, equalTo(removed));
+        return counter.notices;
+    }
+
+    @Test
+    void testReplaceAll() {
+        String[] abcdef = new String[] { "a", "b", "c", "d", "e", "f" };
+        // Narrowing only removes.
+        checkUpdate(abcdef, new String[] { "b", "c", "f" }, 0, 3);
+        checkUpdate(abcdef, new String[] { }, 0, 6);
+        // Widening only adds.
+        checkUpdate(new String[] { "b", "e" }, abcdef, 4, 0);
+        checkUpdate(new String[] { }, abcdef, 6, 0);
+        // A mixed change only touches the items that differ.
+        checkUpdate(abcdef, new String[] { "a", "x", "c", "d", "y", "z" }, 3, 3);
+        // No change does nothing.
+        assertThat(checkUpdate(abcdef, abcdef, 0, 0), equalTo(0));
+        // A change in order replaces the whole list in a single change.
+        assertThat(checkUpdate(abcdef, new String[] { "f", "e", "d", "c" }, 4, 6), equalTo(1));
+        assertThat(checkUpdate(abcdef, new String[] { "a", "x", "e", "d" }, 4, 6), equalTo(1));
+    }
+
+}
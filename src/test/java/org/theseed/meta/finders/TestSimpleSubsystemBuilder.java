@@ -0,0 +1,72 @@
+/**
+ *
+ */
+package org.theseed.meta.finders;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the manifest processing of the simple subsystem builder.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class TestSimpleSubsystemBuilder {
+
+    /** temporary directory for manifest files */
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testManifest() throws IOException {
+        File manifestFile = new File(this.tempDir, SimpleSubsystemBuilder.MANIFEST_NAME);
+        List<String> ids = Arrays.asList("glc__D_c", "g6p_c", "f6p_c", "pyr_c");
+        // A missing manifest is empty.
+        assertThat(SimpleSubsystemBuilder.readManifest(manifestFile, "flow1"), empty());
+        SimpleSubsystemBuilder.writeManifest(manifestFile, "flow1", ids);
+        assertThat(SimpleSubsystemBuilder.readManifest(manifestFile, "flow1"), equalTo(ids));
+        // A manifest for a different flow is ignored.
+        assertThat(SimpleSubsystemBuilder.readManifest(manifestFile, "flow2"), empty());
+        // So is an empty manifest.
+        Files.write(manifestFile.toPath(), new byte[0]);
+        assertThat(SimpleSubsystemBuilder.readManifest(manifestFile, "flow1"), empty());
+    }
+
+    @Test
+    void testPrefix() {
+        List<String> oldIds = Arrays.asList("s", "a", "b", "c");
+        // Everything matches.
+        assertThat(SimpleSubsystemBuilder.matchPrefix(oldIds, oldIds, x -> true), equalTo(3));
+        // A change in the middle stops the prefix.
+        assertThat(SimpleSubsystemBuilder.matchPrefix(oldIds, Arrays.asList("s", "a", "x", "c"), x -> true), equalTo(1));
+        // A change in the starting compound invalidates everything.
+        assertThat(SimpleSubsystemBuilder.matchPrefix(oldIds, Arrays.asList("t", "a", "b", "c"), x -> true), equalTo(0));
+        // A shorter or longer list keeps the common part.
+        assertThat(SimpleSubsystemBuilder.matchPrefix(oldIds, Arrays.asList("s", "a", "b"), x -> true), equalTo(2));
+        assertThat(SimpleSubsystemBuilder.matchPrefix(oldIds, Arrays.asList("s", "a", "b", "c", "d"), x -> true), equalTo(3));
+        // A pathway that is no longer current stops the prefix, and nothing after it is checked.
+        List<String> checked = new ArrayList<String>();
+        int prefix = SimpleSubsystemBuilder.matchPrefix(oldIds, oldIds, x -> {
+            checked.add(x);
+            return ! x.equals("b");
+        });
+        assertThat(prefix, equalTo(1));
+        assertThat(checked, contains("a", "b"));
+        // An empty or trivial manifest matches nothing.
+        assertThat(SimpleSubsystemBuilder.matchPrefix(Collections.emptyList(), oldIds, x -> true), equalTo(0));
+        assertThat(SimpleSubsystemBuilder.matchPrefix(Arrays.asList("s"), oldIds, x -> true), equalTo(0));
+    }
+
+}
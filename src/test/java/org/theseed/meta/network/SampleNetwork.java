@@ -0,0 +1,72 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * This is a small hand-built reaction network for testing the search structures.  Each step is
+ * specified as a string of the form "input>output".  The steps have no reactions, so the network
+ * cannot be used to build pathways.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SampleNetwork extends BaseReactionNetwork {
+
+    // FIELDS
+    /** map of compounds to consuming steps */
+    private Map<String, List<Step>> consumers;
+    /** map of compounds to producing steps */
+    private Map<String, List<Step>> producers;
+    /** set of common compounds */
+    private Set<String> commons;
+
+    /**
+     * Construct a sample network.
+     *
+     * @param commons	array of common compounds
+     * @param steps		steps in the network, each in the form "input>output"
+     */
+    public SampleNetwork(String[] commons, String... steps) {
+        super("sample");
+        this.consumers = new TreeMap<String, List<Step>>();
+        this.producers = new TreeMap<String, List<Step>>();
+        this.commons = new HashSet<String>(Arrays.asList(commons));
+        for (String spec : steps) {
+            String[] parts = spec.split(">");
+            Step step = new Step(null, parts[0], parts[1], false);
+            this.consumers.computeIfAbsent(parts[0], x -> new ArrayList<Step>()).add(step);
+            this.producers.computeIfAbsent(parts[1], x -> new ArrayList<Step>()).add(step);
+        }
+    }
+
+    @Override
+    public List<Step> getSteps(String compound) {
+        return this.consumers.getOrDefault(compound, Collections.emptyList());
+    }
+
+    @Override
+    public List<Step> getProducingSteps(String compound) {
+        return this.producers.getOrDefault(compound, Collections.emptyList());
+    }
+
+    @Override
+    public Set<String> getCompounds() {
+        return this.consumers.keySet();
+    }
+
+    @Override
+    public boolean isCommon(String compound) {
+        return this.commons.contains(compound);
+    }
+
+}
@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.genome.Genome;
+import org.theseed.metabolism.MetaModel;
+import org.theseed.metabolism.Pathway;
+
+/**
+ * This program compares the pathway search engines on a model.  It chooses random pairs of compounds
+ * and searches for a pathway between each pair using the model's search, the breadth-first network
+ * search, and the bidirectional network search.  For each pair, it writes the pathway lengths, the
+ * number of compounds expanded by the network searches, and the elapsed times.  A summary follows,
+ * including the number of pairs for which the bidirectional pathway was longer than the model's
+ * (which should always be zero).
+ *
+ * The positional parameters are the name of the model directory (containing "model.json" and
+ * "base.gto"), the number of pairs to test (default 200), and the random-number seed (default 42).
+ * The report is written to the standard output.  This is a development tool, so it lives with the tests
+ * and must be run from the test classpath.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SearchBenchmark {
+
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SearchBenchmark.class);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SearchBenchmark modelDir [pairs] [seed]");
+            System.exit(1);
+        }
+        File modelDir = new File(args[0]);
+        int pairs = (args.length >= 2 ? Integer.parseInt(args[1]) : 200);
+        long seed = (args.length >= 3 ? Long.parseLong(args[2]) : 42L);
+        // Load the model and capture its network.
+        Genome genome = new Genome(new File(modelDir, "base.gto"));
+        MetaModel model = new MetaModel(new File(modelDir, "model.json"), genome);
+        FlowScenarios scenarios = new FlowScenarios(model);
+        ReactionNetwork network = scenarios.getBase();
+        long start = System.nanoTime();
+        network.getLandmarks();
+        double landmarkMs = (System.nanoTime() - start) / 1e6;
+        // Choose the candidate compounds.
+        List<String> compounds = new ArrayList<String>();
+        for (String compound : network.getCompounds()) {
+            if (! network.isCommon(compound))
+                compounds.add(compound);
+        }
+        compounds.sort(null);
+        Random rand = new Random(seed);
+        // These are the summary counters.
+        long modelNs = 0, bfsNs = 0, biNs = 0;
+        long bfsExpanded = 0, biExpanded = 0;
+        int found = 0, worse = 0, mismatched = 0;
+        System.out.println("start\tgoal\tmodel_len\tbfs_len\tbfs_expanded\tbi_len\tbi_expanded\tmodel_ms\tbfs_ms\tbi_ms");
+        for (int i = 0; i < pairs; i++) {
+            String from = compounds.get(rand.nextInt(compounds.size()));
+            String to = compounds.get(rand.nextInt(compounds.size()));
+            long t0 = System.nanoTime();
+            Pathway modelPath = model.getPathway(from, to);
+            long t1 = System.nanoTime();
+            NetworkSearch bfs = new NetworkSearch(network);
+            Pathway bfsPath = bfs.getPathway(from, to);
+            long t2 = System.nanoTime();
+            NetworkSearch bi = new BidirectionalSearch(network);
+            Pathway biPath = bi.getPathway(from, to);
+            long t3 = System.nanoTime();
+            modelNs += t1 - t0;
+            bfsNs += t2 - t1;
+            biNs += t3 - t2;
+            bfsExpanded += bfs.getExpansions();
+            biExpanded += bi.getExpansions();
+            int modelLen = length(modelPath);
+            int biLen = length(biPath);
+            if (biLen >= 0)
+                found++;
+            if (modelLen >= 0 && (biLen < 0 || biLen > modelLen))
+                worse++;
+            if (length(bfsPath) != biLen)
+                mismatched++;
+            System.out.format("%s\t%s\t%d\t%d\t%d\t%d\t%d\t%.3f\t%.3f\t%.3f%n", from, to, modelLen, length(bfsPath),
+                    bfs.getExpansions(), biLen, bi.getExpansions(), (t1 - t0) / 1e6, (t2 - t1) / 1e6, (t3 - t2) / 1e6);
+        }
+        System.out.println();
+        System.out.format("# %d pairs tested, %d pathways found.%n", pairs, found);
+        System.out.format("# Landmark index built in %.1f ms.%n", landmarkMs);
+        System.out.format("# Model search:          %10.1f ms total.%n", modelNs / 1e6);
+        System.out.format("# Breadth-first search:  %10.1f ms total, %d compounds expanded.%n", bfsNs / 1e6, bfsExpanded);
+        System.out.format("# Bidirectional search:  %10.1f ms total, %d compounds expanded.%n", biNs / 1e6, biExpanded);
+        System.out.format("# %d bidirectional pathways longer than the model's, %d differing in length from breadth-first.%n",
+                worse, mismatched);
+    }
+
+    /**
+     * @return the length of a pathway, or -1 if there is no pathway
+     *
+     * @param path		pathway to measure, or NULL
+     */
+    private static int length(Pathway path) {
+        return (path == null ? -1 : path.size());
+    }
+
+}
@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the compact form of a reaction network.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class TestCompactGraph {
+
+    /**
+     * @return the sorted descriptions of a list of steps, in the form "input>output"
+     *
+     * @param steps		steps to describe
+     */
+    private static List<String> describe(List<Step> steps) {
+        List<String> retVal = new ArrayList<String>(steps.size());
+        for (Step step : steps)
+            retVal.add(step.getInput() + ">" + step.getOutput());
+        retVal.sort(null);
+        return retVal;
+    }
+
+    @Test
+    void testGraph() {
+        SampleNetwork network = new SampleNetwork(new String[] { "h" }, "a>b", "a>c", "b>d", "c>d", "d>a", "d>e",
+                "e>h", "h>b", "f>g", "g>f", "c>x");
+        CompactGraph graph = network.getCompactGraph();
+        assertThat(network.getCompactGraph(), sameInstance(graph));
+        // "x" only appears as an output, but it still gets an index.
+        assertThat(graph.size(), equalTo(9));
+        assertThat(graph.getStepCount(), equalTo(11));
+        assertThat(graph.getIndex("zz"), equalTo(-1));
+        for (String compound : new String[] { "a", "b", "c", "d", "e", "f", "g", "h", "x" }) {
+            int idx = graph.getIndex(compound);
+            assertThat(compound, idx, greaterThanOrEqualTo(0));
+            assertThat(graph.getCompound(idx), equalTo(compound));
+            assertThat(compound, graph.isCommon(idx), equalTo(compound.equals("h")));
+            // The consuming steps must match the network's.
+            List<Step> steps = new ArrayList<Step>();
+            for (int pos = graph.fwdStart(idx); pos < graph.fwdEnd(idx); pos++) {
+                int s = graph.fwdStep(pos);
+                assertThat(graph.getInput(s), equalTo(idx));
+                assertThat(graph.getCompound(graph.getOutput(s)), equalTo(graph.getStep(s).getOutput()));
+                steps.add(graph.getStep(s));
+            }
+            assertThat(compound, describe(steps), equalTo(describe(network.getSteps(compound))));
+            // The producing steps must match the network's.
+            steps.clear();
+            for (int pos = graph.bwdStart(idx); pos < graph.bwdEnd(idx); pos++) {
+                int s = graph.bwdStep(pos);
+                assertThat(graph.getOutput(s), equalTo(idx));
+                assertThat(graph.getCompound(graph.getInput(s)), equalTo(graph.getStep(s).getInput()));
+                steps.add(graph.getStep(s));
+            }
+            assertThat(compound, describe(steps), equalTo(describe(network.getProducingSteps(compound))));
+        }
+    }
+
+    @Test
+    void testEmpty() {
+        SampleNetwork network = new SampleNetwork(new String[0]);
+        CompactGraph graph = network.getCompactGraph();
+        assertThat(graph.size(), equalTo(0));
+        assertThat(graph.getStepCount(), equalTo(0));
+        assertThat(graph.getIndex("a"), equalTo(-1));
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+import org.theseed.metabolism.Pathway;
+
+/**
+ * Tests for the pathway cache.  The searches all fail, so no model is needed.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class TestPathwayCache {
+
+    /** object locked during searches */
+    private final Object lock = new Object();
+    /** number of searches performed */
+    private int searches = 0;
+
+    /**
+     * Look up a search result, counting the searches performed.
+     *
+     * @param cache		cache to use
+     * @param key		search key
+     *
+     * @return the pathway found (always NULL)
+     */
+    private Pathway lookup(PathwayCache cache, String key) {
+        return cache.lookup(key, this.lock, () -> {
+            assertThat("lock held", Thread.holdsLock(this.lock));
+            this.searches++;
+            return null;
+        });
+    }
+
+    @Test
+    void testEviction() {
+        PathwayCache cache = new PathwayCache(2);
+        assertThat(this.lookup(cache, "a"), nullValue());
+        this.lookup(cache, "b");
+        // Failed searches are cached.
+        this.lookup(cache, "a");
+        assertThat(this.searches, equalTo(2));
+        assertThat(cache.getHits(), equalTo(1L));
+        assertThat(cache.getMisses(), equalTo(2L));
+        assertThat(cache.size(), equalTo(2));
+        // "b" is now the least recently used, so it goes when "c" comes in.
+        this.lookup(cache, "c");
+        assertThat(cache.size(), equalTo(2));
+        assertThat(this.searches, equalTo(3));
+        this.lookup(cache, "a");
+        this.lookup(cache, "c");
+        assertThat(this.searches, equalTo(3));
+        this.lookup(cache, "b");
+        assertThat(this.searches, equalTo(4));
+        assertThat(cache.getHits(), equalTo(3L));
+        assertThat(cache.getMisses(), equalTo(4L));
+        cache.clear();
+        assertThat(cache.size(), equalTo(0));
+        this.lookup(cache, "a");
+        assertThat(this.searches, equalTo(5));
+    }
+
+    @Test
+    void testFingerprint() {
+        PathwayCache cache = new PathwayCache(PathwayCache.DEFAULT_SIZE);
+        this.lookup(cache, "a");
+        this.lookup(cache, "b");
+        // The initial fingerprint is empty, so this changes nothing.
+        cache.setFingerprint("");
+        assertThat(cache.size(), equalTo(2));
+        // A new fingerprint clears the cache.
+        cache.setFingerprint("f1");
+        assertThat(cache.size(), equalTo(0));
+        this.lookup(cache, "a");
+        assertThat(this.searches, equalTo(3));
+        // The same fingerprint keeps it.
+        cache.setFingerprint("f1");
+        this.lookup(cache, "a");
+        assertThat(this.searches, equalTo(3));
+        assertThat(cache.size(), equalTo(1));
+        // Going back to an old fingerprint still clears it.
+        cache.setFingerprint("");
+        assertThat(cache.size(), equalTo(0));
+        this.lookup(cache, "a");
+        assertThat(this.searches, equalTo(4));
+    }
+
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package org.theseed.meta.network;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the reachability index.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class TestReachabilityIndex {
+
+    /**
+     * Determine by brute force whether there is a pathway from one compound to another.  Common compounds
+     * can be the start or the goal of a pathway, but not an intermediate.
+     *
+     * @param network	network to search
+     * @param start		starting compound
+     * @param goal		goal compound
+     *
+     * @return TRUE if the goal can be reached from the start
+     */
+    private static boolean search(IReactionNetwork network, String start, String goal) {
+        boolean retVal = start.equals(goal);
+        Set<String> seen = new HashSet<String>();
+        Deque<String> queue = new ArrayDeque<String>();
+        seen.add(start);
+        queue.add(start);
+        while (! retVal && ! queue.isEmpty()) {
+            String compound = queue.remove();
+            for (Step step : network.getSteps(compound)) {
+                String output = step.getOutput();
+                if (output.equals(goal))
+                    retVal = true;
+                else if (! network.isCommon(output) && seen.add(output))
+                    queue.add(output);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Verify the reachability index against a brute-force search for every pair of compounds.
+     *
+     * @param network		network to check
+     * @param compounds		compounds to check
+     */
+    private static void checkAll(IReactionNetwork network, List<String> compounds) {
+        ReachabilityIndex index = network.getReachability();
+        for (String start : compounds) {
+            for (String goal : compounds)
+                assertThat(start + " to " + goal, index.canReach(start, goal), equalTo(search(network, start, goal)));
+        }
+    }
+
+    @Test
+    void testSample() {
+        SampleNetwork network = new SampleNetwork(new String[] { "h" }, "a>b", "a>c", "b>d", "c>d", "d>a", "d>e",
+                "e>h", "h>b", "f>g", "g>f", "c>x");
+        ReachabilityIndex index = network.getReachability();
+        assertThat(network.getReachability(), sameInstance(index));
+        // The components are {a,b,c,d}, {e}, {f,g}, {h}, and {x}.
+        assertThat(index.getComponentCount(), equalTo(5));
+        assertThat(index.canReach("a", "x"), equalTo(true));
+        assertThat(index.canReach("b", "c"), equalTo(true));
+        assertThat(index.canReach("x", "a"), equalTo(false));
+        assertThat(index.canReach("f", "a"), equalTo(false));
+        // A common compound can end a pathway or start one, but cannot be passed through.
+        assertThat(index.canReach("a", "h"), equalTo(true));
+        assertThat(index.canReach("h", "x"), equalTo(true));
+        assertThat(index.canReach("e", "b"), equalTo(false));
+        // Unknown compounds are unreachable, except from themselves.
+        assertThat(index.canReach("a", "zz"), equalTo(false));
+        assertThat(index.canReach("zz", "a"), equalTo(false));
+        assertThat(index.canReach("zz", "zz"), equalTo(true));
+        assertThat(index.canReachAny(Arrays.asList("f", "e"), "h"), equalTo(true));
+        assertThat(index.canReachAny(Arrays.asList("f", "x"), "a"), equalTo(false));
+        checkAll(network, Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h", "x", "zz"));
+    }
+
+    @Test
+    void testRandom() {
+        Random rand = new Random(1421);
+        final int n = 60;
+        List<String> compounds = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++)
+            compounds.add("c" + i);
+        String[] commons = new String[] { "c0", "c1", "c2" };
+        for (int trial = 0; trial < 5; trial++) {
+            String[] steps = new String[n + trial * 15];
+            for (int i = 0; i < steps.length; i++)
+                steps[i] = compounds.get(rand.nextInt(n)) + ">" + compounds.get(rand.nextInt(n));
+            checkAll(new SampleNetwork(commons, steps), compounds);
+        }
+    }
+
+}
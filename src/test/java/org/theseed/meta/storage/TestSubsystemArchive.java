@@ -0,0 +1,165 @@
+/**
+ *
+ */
+package org.theseed.meta.storage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for subsystem archives.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class TestSubsystemArchive {
+
+    /** temporary directory for the subsystems */
+    @TempDir
+    File tempDir;
+
+    /**
+     * @return the JSON text for a dummy pathway
+     *
+     * @param output	output compound of the pathway
+     */
+    private static byte[] text(String output) {
+        return ("{\"output\": \"" + output + "\", \"note\": \"\u03b1-D-glucose\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a subsystem directory containing a small archive.
+     *
+     * @param name		name of the subsystem directory
+     *
+     * @return the subsystem directory
+     *
+     * @throws IOException
+     */
+    private File buildArchive(String name) throws IOException {
+        File subDir = new File(this.tempDir, name);
+        subDir.mkdir();
+        SubsystemArchive.Writer writer = new SubsystemArchive.Writer();
+        writer.add("pyr_c.path.json", "glc__D_c", "pyr_c", 10, text("pyr_c"));
+        writer.add("g6p_c.path.json", "glc__D_c", "g6p_c", 1, text("g6p_c"));
+        writer.add("f6p_c.path.json", "glc__D_c", "f6p_c", 2, text("f6p_c"));
+        writer.add("h2o_c.path.json", "glc__D_c", "h2o_c", 7, new byte[0]);
+        // This replaces the first pathway.
+        writer.add("pyr_c.path.json", "glc__D_c", "pyr_c", 5, text("pyr_c"));
+        writer.add("accoa_c.path.json", "glc__D_c", "accoa_c", 5, text("accoa_c"));
+        assertThat(writer.size(), equalTo(5));
+        assertThat(SubsystemArchive.exists(subDir), equalTo(false));
+        writer.save(SubsystemArchive.archiveFile(subDir));
+        return subDir;
+    }
+
+    /**
+     * @return the names of the pathways in an archive, in index order
+     *
+     * @param archive	archive to list
+     */
+    private static List<String> names(SubsystemArchive archive) {
+        List<String> retVal = new ArrayList<String>();
+        for (SubsystemArchive.Entry entry : archive.getEntries())
+            retVal.add(entry.getName());
+        return retVal;
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        File subDir = this.buildArchive("sub1");
+        assertThat(SubsystemArchive.exists(subDir), equalTo(true));
+        SubsystemArchive archive = SubsystemArchive.open(subDir);
+        assertThat(archive.getFile(), equalTo(SubsystemArchive.archiveFile(subDir)));
+        // The index is sorted by length, then output, then name.
+        assertThat(names(archive), contains("g6p_c.path.json", "f6p_c.path.json", "accoa_c.path.json",
+                "pyr_c.path.json", "h2o_c.path.json"));
+        SubsystemArchive.Entry entry = archive.find("pyr_c.path.json");
+        assertThat(entry.getInput(), equalTo("glc__D_c"));
+        assertThat(entry.getOutput(), equalTo("pyr_c"));
+        assertThat(entry.getLength(), equalTo(5));
+        assertThat(archive.find("nad_c.path.json"), nullValue());
+        // The text comes back exactly as written, in any order.
+        for (String output : new String[] { "pyr_c", "g6p_c", "accoa_c", "f6p_c" })
+            assertThat(output, archive.read(archive.find(output + ".path.json")), equalTo(text(output)));
+        assertThat(archive.read(archive.find("h2o_c.path.json")).length, equalTo(0));
+        // Repack the archive with one new pathway and one replaced one.
+        SubsystemArchive.Writer writer = new SubsystemArchive.Writer();
+        for (SubsystemArchive.Entry oldEntry : archive.getEntries())
+            writer.add(archive, oldEntry);
+        writer.add("nad_c.path.json", "glc__D_c", "nad_c", 3, text("nad_c"));
+        writer.add("g6p_c.path.json", "glc__D_c", "g6p_c", 4, text("g6p_x"));
+        File subDir2 = new File(this.tempDir, "sub2");
+        subDir2.mkdir();
+        writer.save(SubsystemArchive.archiveFile(subDir2));
+        SubsystemArchive archive2 = SubsystemArchive.open(subDir2);
+        assertThat(names(archive2), contains("f6p_c.path.json", "nad_c.path.json", "g6p_c.path.json",
+                "accoa_c.path.json", "pyr_c.path.json", "h2o_c.path.json"));
+        assertThat(archive2.read(archive2.find("g6p_c.path.json")), equalTo(text("g6p_x")));
+        for (String output : new String[] { "pyr_c", "accoa_c", "f6p_c", "nad_c" })
+            assertThat(output, archive2.read(archive2.find(output + ".path.json")), equalTo(text(output)));
+    }
+
+    @Test
+    void testReplace() throws IOException {
+        File subDir = this.buildArchive("sub4");
+        SubsystemArchive archive = SubsystemArchive.open(subDir);
+        // Replace the archive with a different one before anything is read from the old one.
+        SubsystemArchive.Writer writer = new SubsystemArchive.Writer();
+        writer.add("pyr_c.path.json", "glc__D_c", "pyr_c", 1, text("other"));
+        File newFile = new File(this.tempDir, "new.archive");
+        writer.save(newFile);
+        Files.move(newFile.toPath(), SubsystemArchive.archiveFile(subDir).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        // The open archive still reads the file its index describes.
+        for (String output : new String[] { "pyr_c", "g6p_c", "accoa_c", "f6p_c" })
+            assertThat(output, archive.read(archive.find(output + ".path.json")), equalTo(text(output)));
+        archive.close();
+        SubsystemArchive archive2 = SubsystemArchive.open(subDir);
+        assertThat(names(archive2), contains("pyr_c.path.json"));
+        assertThat(archive2.read(archive2.find("pyr_c.path.json")), equalTo(text("other")));
+        archive2.close();
+    }
+
+    @Test
+    void testReader() throws Exception {
+        File subDir = this.buildArchive("sub3");
+        SubsystemReader reader = new SubsystemReader(subDir);
+        assertThat(reader.isArchive(), equalTo(true));
+        assertThat(reader.size(), equalTo(5));
+        // Listing an archive does not parse any pathways, so no model is needed.
+        List<SubsystemPath> paths = reader.readAll(null);
+        assertThat(paths.size(), equalTo(5));
+        SubsystemPath first = paths.get(0);
+        assertThat(first.getName(), equalTo("g6p_c.path.json"));
+        assertThat(first.getInput(), equalTo("glc__D_c"));
+        assertThat(first.getOutput(), equalTo("g6p_c"));
+        assertThat(first.size(), equalTo(1));
+        for (SubsystemPath path : paths)
+            assertThat(path.getName(), path.isParsed(), equalTo(false));
+        for (int i = 1; i < paths.size(); i++)
+            assertThat(paths.get(i).compareTo(paths.get(i - 1)), greaterThan(0));
+        assertThat(reader.read(3, null).getName(), equalTo("pyr_c.path.json"));
+        assertThat(reader.readText("accoa_c.path.json"), equalTo(text("accoa_c")));
+        assertThat(reader.readText("nad_c.path.json"), nullValue());
+    }
+
+    @Test
+    void testBadArchive() throws IOException {
+        Files.write(SubsystemArchive.archiveFile(this.tempDir).toPath(), "not an archive".getBytes(StandardCharsets.UTF_8));
+        assertThat(SubsystemArchive.exists(this.tempDir), equalTo(true));
+        assertThrows(IOException.class, () -> SubsystemArchive.open(this.tempDir));
+    }
+
+}